@@ -29,6 +29,9 @@ import java.util.Set;
 
 /**
  * Entry for Matisse's media selection.
+ * <p>
+ * When the picker is about to be shown, {@code Matisse.from(this).choose(mimeTypes).prewarm()} starts loading
+ * its albums and media ahead of {@link SelectionCreator#forResult(int)}.
  */
 public final class Matisse {
 
@@ -99,7 +102,8 @@ public final class Matisse {
     /**
      * MIME types the selection constrains on.
      * <p>
-     * Types not included in the set will still be shown in the grid but can't be chosen.
+     * Types not included in the set are not queried, unless shown with
+     * {@link SelectionCreator#showMimeTypes(Set)}, in which case they are shown in the grid but can't be chosen.
      *
      * @param mimeTypes MIME types set user can choose from.
      * @return {@link SelectionCreator} to build select specifications.
@@ -113,7 +117,8 @@ public final class Matisse {
     /**
      * MIME types the selection constrains on.
      * <p>
-     * Types not included in the set will still be shown in the grid but can't be chosen.
+     * Types not included in the set are not queried, unless shown with
+     * {@link SelectionCreator#showMimeTypes(Set)}, in which case they are shown in the grid but can't be chosen.
      *
      * @param mimeTypes          MIME types set user can choose from.
      * @param mediaTypeExclusive Whether can choose images and videos at the same time during one single choosing
@@ -18,21 +18,29 @@ package com.zhihu.matisse;
 
 import android.content.ContentResolver;
 import android.net.Uri;
-import android.text.TextUtils;
+import android.support.annotation.Nullable;
 import android.support.v4.util.ArraySet;
-import android.webkit.MimeTypeMap;
+import android.text.TextUtils;
 
 import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * MIME Type enumeration to restrict selectable media on the selection activity. Matisse only supports images and
  * videos.
  * <p>
+ * Every constant is registered in lookup tables by MIME type name, including the other names some devices store
+ * for the same format, and by file extension, so {@link #fromMimeTypeName(String)} and
+ * {@link #fromExtension(String)} take constant time. A new format only needs a new constant.
+ * <p>
  * Good example of mime types Android supports:
  * https://android.googlesource.com/platform/frameworks/base/+/refs/heads/master/media/java/android/media/MediaFile.java
  */
@@ -52,10 +60,16 @@ public enum MimeType {
     )),
     BMP("image/x-ms-bmp", arraySetOf(
             "bmp"
-    )),
+    ), "image/bmp"),
     WEBP("image/webp", arraySetOf(
             "webp"
     )),
+    HEIC("image/heic", arraySetOf(
+            "heic"
+    )),
+    HEIF("image/heif", arraySetOf(
+            "heif"
+    )),
 
     // ============== videos ==============
     MPEG("video/mpeg", arraySetOf(
@@ -88,14 +102,37 @@ public enum MimeType {
     )),
     AVI("video/avi", arraySetOf(
             "avi"
-    ));
+    ), "video/x-msvideo");
+
+    private static final Map<String, MimeType> BY_NAME = new HashMap<>();
+    private static final Map<String, MimeType> BY_EXTENSION = new HashMap<>();
+
+    static {
+        for (MimeType type : values()) {
+            for (String name : type.mMimeTypeNames) {
+                BY_NAME.put(name, type);
+            }
+            for (String extension : type.mExtensions) {
+                BY_EXTENSION.put(extension, type);
+            }
+        }
+    }
 
     private final String mMimeTypeName;
     private final Set<String> mExtensions;
+    private final List<String> mMimeTypeNames;
+    private final boolean mImage;
+    private final boolean mVideo;
 
-    MimeType(String mimeTypeName, Set<String> extensions) {
+    MimeType(String mimeTypeName, Set<String> extensions, String... aliases) {
         mMimeTypeName = mimeTypeName;
         mExtensions = extensions;
+        String[] names = new String[aliases.length + 1];
+        names[0] = mimeTypeName;
+        System.arraycopy(aliases, 0, names, 1, aliases.length);
+        mMimeTypeNames = Collections.unmodifiableList(Arrays.asList(names));
+        mImage = mimeTypeName.startsWith("image/");
+        mVideo = mimeTypeName.startsWith("video/");
     }
 
     public static Set<MimeType> ofAll() {
@@ -107,13 +144,59 @@ public enum MimeType {
     }
 
     public static Set<MimeType> ofImage() {
-        return EnumSet.of(JPEG, PNG, GIF, BMP, WEBP);
+        return EnumSet.of(JPEG, PNG, GIF, BMP, WEBP, HEIC, HEIF);
     }
 
     public static Set<MimeType> ofVideo() {
         return EnumSet.of(MPEG, MP4, QUICKTIME, THREEGPP, THREEGPP2, MKV, WEBM, TS, AVI);
     }
 
+    /**
+     * @return the type stored under this MIME type name, or null if it is not supported.
+     */
+    @Nullable
+    public static MimeType fromMimeTypeName(@Nullable String mimeTypeName) {
+        if (mimeTypeName == null) {
+            return null;
+        }
+        MimeType type = BY_NAME.get(mimeTypeName);
+        return type != null ? type : BY_NAME.get(mimeTypeName.toLowerCase(Locale.US));
+    }
+
+    /**
+     * @param extension file extension without the dot, in any case.
+     * @return the type of files with this extension, or null if it is not supported.
+     */
+    @Nullable
+    public static MimeType fromExtension(@Nullable String extension) {
+        if (extension == null) {
+            return null;
+        }
+        return BY_EXTENSION.get(extension.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Resolve the type of a content {@link Uri}, from its MIME type and else from its file extension.
+     *
+     * @return the type, or null if it is not supported.
+     */
+    @Nullable
+    public static MimeType typeOf(ContentResolver resolver, Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        MimeType type = fromMimeTypeName(resolver.getType(uri));
+        if (type != null) {
+            return type;
+        }
+        String path = PhotoMetadataUtils.getPath(resolver, uri);
+        if (TextUtils.isEmpty(path)) {
+            return null;
+        }
+        int dot = path.lastIndexOf('.');
+        return dot >= 0 ? fromExtension(path.substring(dot + 1)) : null;
+    }
+
     private static Set<String> arraySetOf(String... suffixes) {
         return new ArraySet<>(Arrays.asList(suffixes));
     }
@@ -123,31 +206,22 @@ public enum MimeType {
         return mMimeTypeName;
     }
 
+    /**
+     * @return the MIME type name followed by the other names stored for this format.
+     */
+    public List<String> getMimeTypeNames() {
+        return mMimeTypeNames;
+    }
+
+    public boolean isImage() {
+        return mImage;
+    }
+
+    public boolean isVideo() {
+        return mVideo;
+    }
+
     public boolean checkType(ContentResolver resolver, Uri uri) {
-        MimeTypeMap map = MimeTypeMap.getSingleton();
-        if (uri == null) {
-            return false;
-        }
-        String type = map.getExtensionFromMimeType(resolver.getType(uri));
-        String path = null;
-        // lazy load the path and prevent resolve for multiple times
-        boolean pathParsed = false;
-        for (String extension : mExtensions) {
-            if (extension.equals(type)) {
-                return true;
-            }
-            if (!pathParsed) {
-                // we only resolve the path for one time
-                path = PhotoMetadataUtils.getPath(resolver, uri);
-                if (!TextUtils.isEmpty(path)) {
-                    path = path.toLowerCase(Locale.US);
-                }
-                pathParsed = true;
-            }
-            if (path != null && path.endsWith(extension)) {
-                return true;
-            }
-        }
-        return false;
+        return typeOf(resolver, uri) == this;
     }
 }
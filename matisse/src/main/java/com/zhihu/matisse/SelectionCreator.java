@@ -21,6 +21,7 @@ import android.content.Intent;
 import android.os.Build;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.StyleRes;
 import android.support.v4.app.Fragment;
@@ -29,12 +30,14 @@ import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.filter.Filter;
 import com.zhihu.matisse.internal.entity.CaptureStrategy;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.loader.MediaSnapshotCache;
 import com.zhihu.matisse.ui.MatisseActivity;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import static android.content.pm.ActivityInfo.SCREEN_ORIENTATION_BEHIND;
 import static android.content.pm.ActivityInfo.SCREEN_ORIENTATION_FULL_SENSOR;
@@ -241,7 +244,7 @@ public final class SelectionCreator {
 
     /**
      * Photo thumbnail's scale compared to the View's size. It should be a float value in (0.0,
-     * 1.0].
+     * 1.0]. The scaled size is rounded up to one of a few sizes shared by every thumbnail.
      *
      * @param scale Thumbnail's scale in (0.0, 1.0]. Default value is 0.5.
      * @return {@link SelectionCreator} for fluent API.
@@ -256,9 +259,12 @@ public final class SelectionCreator {
     /**
      * Provide an image engine.
      * <p>
-     * There are two built-in image engines:
+     * There are four built-in image engines:
      * 1. {@link com.zhihu.matisse.engine.impl.GlideEngine}
      * 2. {@link com.zhihu.matisse.engine.impl.PicassoEngine}
+     * 3. {@link com.zhihu.matisse.engine.impl.BitmapEngine}, which needs no image library
+     * 4. {@link com.zhihu.matisse.engine.impl.MediaStoreEngine}, which needs no image library either and reads the
+     * thumbnails kept by the media store
      * And you can implement your own image engine.
      *
      * @param imageEngine {@link ImageEngine}
@@ -269,6 +275,170 @@ public final class SelectionCreator {
         return this;
     }
 
+    /**
+     * Load the media grid in pages instead of a single query, so that the first screen shows up as soon as the
+     * first page is read. Following pages are loaded ahead of the scroll position. Recommended for large
+     * libraries.
+     *
+     * @param pageSize Rows per page, 0 to disable paging. Default value is 0.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator pageSize(int pageSize) {
+        if (pageSize < 0) throw new IllegalArgumentException("pageSize cannot be negative");
+        mSelectionSpec.pageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Executors for the picker's background work, e.g. to share the app's own bounded pools or to run the
+     * picker at a lower priority. Each lane may be the same executor.
+     * <p>
+     * Media store queries and cached index files use the I/O lane, image decoding done by Matisse itself, i.e.
+     * {@link com.zhihu.matisse.engine.impl.BitmapEngine} and the tiles of a zoomed in preview, uses the decode
+     * lane, and in-memory work such as sorting or indexing loaded media uses the CPU lane. Other
+     * {@link ImageEngine}s keep their own threads. Default value is
+     * {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR} for every lane.
+     *
+     * @param io     Executor for media store and file reads.
+     * @param decode Executor for image decoding.
+     * @param cpu    Executor for in-memory computation.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator executors(@NonNull Executor io, @NonNull Executor decode, @NonNull Executor cpu) {
+        if (io == null || decode == null || cpu == null)
+            throw new IllegalArgumentException("executors cannot be null");
+        mSelectionSpec.ioExecutor = io;
+        mSelectionSpec.decodeExecutor = decode;
+        mSelectionSpec.cpuExecutor = cpu;
+        return this;
+    }
+
+    /**
+     * Only show media whose file size is within the given range.
+     * <p>
+     * Unlike a {@link Filter}, which rejects an item when it is chosen, this is part of the media query: other
+     * files are neither shown nor counted in albums.
+     *
+     * @param minBytes Minimum size in bytes, inclusive. Default value is 0.
+     * @param maxBytes Maximum size in bytes, inclusive. Default value is {@link Long#MAX_VALUE}.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator sizeRange(long minBytes, long maxBytes) {
+        if (minBytes < 0 || maxBytes < minBytes)
+            throw new IllegalArgumentException("size range must satisfy 0 <= minBytes <= maxBytes");
+        mSelectionSpec.minSize = minBytes;
+        mSelectionSpec.maxSize = maxBytes;
+        return this;
+    }
+
+    /**
+     * Only show videos whose duration is within the given range. Images and videos of unknown duration are not
+     * affected. Checked by the media query, like {@link #sizeRange(long, long)}.
+     *
+     * @param minMillis Minimum duration in milliseconds, inclusive. Default value is 0.
+     * @param maxMillis Maximum duration in milliseconds, inclusive. Default value is {@link Long#MAX_VALUE}.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator durationRange(long minMillis, long maxMillis) {
+        if (minMillis < 0 || maxMillis < minMillis)
+            throw new IllegalArgumentException("duration range must satisfy 0 <= minMillis <= maxMillis");
+        mSelectionSpec.minDuration = minMillis;
+        mSelectionSpec.maxDuration = maxMillis;
+        return this;
+    }
+
+    /**
+     * Only show media whose stored width and height are within the given ranges. Media of unknown dimensions
+     * are not affected. Checked by the media query, like {@link #sizeRange(long, long)}.
+     *
+     * @param minWidth  Minimum width in pixels, inclusive.
+     * @param minHeight Minimum height in pixels, inclusive.
+     * @param maxWidth  Maximum width in pixels, inclusive, {@link Filter#MAX} for none.
+     * @param maxHeight Maximum height in pixels, inclusive, {@link Filter#MAX} for none.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator dimensionRange(int minWidth, int minHeight, int maxWidth, int maxHeight) {
+        if (minWidth < 0 || minHeight < 0 || maxWidth < minWidth || maxHeight < minHeight)
+            throw new IllegalArgumentException("dimension range must satisfy 0 <= min <= max");
+        mSelectionSpec.minWidth = minWidth;
+        mSelectionSpec.minHeight = minHeight;
+        mSelectionSpec.maxWidth = maxWidth;
+        mSelectionSpec.maxHeight = maxHeight;
+        return this;
+    }
+
+    /**
+     * Only show media of the given MIME types instead of the set passed to {@link Matisse#choose(Set)}. Types shown
+     * but missing from that set can't be chosen. Checked by the media query, like {@link #sizeRange(long, long)}.
+     *
+     * @param mimeTypes MIME types to show.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator showMimeTypes(@NonNull Set<MimeType> mimeTypes) {
+        if (mimeTypes == null || mimeTypes.isEmpty())
+            throw new IllegalArgumentException("mimeTypes cannot be empty");
+        mSelectionSpec.shownMimeTypes = mimeTypes;
+        return this;
+    }
+
+    /**
+     * Let the user sort the media grid by any of the given orders, starting with the first one. Each order is
+     * computed once per loaded album and kept, so switching back and forth does not query the media store again.
+     * Orders other than {@link SortOrder#DATE_TAKEN} are not available with {@link #pageSize(int)}.
+     *
+     * @param orders Orders offered, the first one shown on launch. Default value is {@link SortOrder#DATE_TAKEN}
+     *               only, which shows no sort control.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator sortOrders(@NonNull SortOrder... orders) {
+        if (orders == null || orders.length == 0)
+            throw new IllegalArgumentException("orders cannot be empty");
+        mSelectionSpec.sortOrders = orders.clone();
+        return this;
+    }
+
+    /**
+     * Determines whether a search box narrowing the media grid to the display names containing the text typed is
+     * shown. Display names are loaded and indexed in the background on the first search. Not available with
+     * {@link #pageSize(int)}.
+     *
+     * @param enable Whether to enable searching or not. Default value is false.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator searchable(boolean enable) {
+        mSelectionSpec.searchEnabled = enable;
+        return this;
+    }
+
+    /**
+     * Split the media grid into sections by date taken, each under a header, with a scrubber jumping to any month.
+     * Sections are computed in the background after the media are shown, and only while the grid is sorted by
+     * {@link SortOrder#DATE_TAKEN}.
+     *
+     * @param period Period of a section, null for none. Default value is null.
+     * @return {@link SelectionCreator} for fluent API.
+     */
+    public SelectionCreator dateSections(@Nullable DateSection period) {
+        mSelectionSpec.dateSection = period;
+        return this;
+    }
+
+    /**
+     * Start loading the albums and media this selection shows, in the background and ahead of
+     * {@link #forResult(int)}. The result is kept in process until the media store changes, so that this and
+     * later launches with the same MIME types, constraints and capture setting show it without querying again.
+     * <p>
+     * Nothing is loaded unless {@link android.Manifest.permission#READ_EXTERNAL_STORAGE} is granted already, so call
+     * this once it is, e.g. when the host screen opens after the permission was given.
+     */
+    public void prewarm() {
+        Activity activity = mMatisse.getActivity();
+        if (activity == null) {
+            return;
+        }
+        MediaSnapshotCache.prewarm(activity);
+    }
+
     /**
      * Start to select media and wait for result.
      *
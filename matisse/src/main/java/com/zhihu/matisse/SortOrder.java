@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse;
+
+import android.support.annotation.StringRes;
+
+/**
+ * Orders the media grid can be sorted by, see {@link SelectionCreator#sortOrders(SortOrder...)}. Every order but
+ * {@link #NAME} shows the newest, largest or longest media first; ties keep the order of {@link #DATE_TAKEN}.
+ */
+public enum SortOrder {
+    DATE_TAKEN(R.string.sort_date_taken),
+    DATE_MODIFIED(R.string.sort_date_modified),
+    SIZE(R.string.sort_size),
+    DURATION(R.string.sort_duration),
+    // display name, case insensitive and ascending
+    NAME(R.string.sort_name);
+
+    private final int mLabel;
+
+    SortOrder(@StringRes int label) {
+        mLabel = label;
+    }
+
+    @StringRes
+    public int getLabel() {
+        return mLabel;
+    }
+}
@@ -20,9 +20,14 @@ import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.widget.ImageView;
 
+import java.util.List;
+
 /**
- * Image loader interface. There are predefined {@link com.zhihu.matisse.engine.impl.GlideEngine}
- * and {@link com.zhihu.matisse.engine.impl.PicassoEngine}.
+ * Image loader interface. There are predefined {@link com.zhihu.matisse.engine.impl.GlideEngine},
+ * {@link com.zhihu.matisse.engine.impl.PicassoEngine}, {@link com.zhihu.matisse.engine.impl.BitmapEngine} and
+ * {@link com.zhihu.matisse.engine.impl.MediaStoreEngine}. An engine may also implement {@link Controllable},
+ * {@link Preloadable} and {@link ThumbnailPreviewable} to speed up the media grid and the preview; the picker
+ * checks for them.
  */
 @SuppressWarnings("unused")
 public interface ImageEngine {
@@ -79,4 +84,73 @@ public interface ImageEngine {
      * @return true support animated gif, false do not support animated gif.
      */
     boolean supportAnimatedGif();
+
+    /**
+     * Optional for an {@link ImageEngine}: cancel and hold back loads as the media grid scrolls.
+     */
+    interface Controllable {
+
+        /**
+         * Stop starting thumbnail loads, e.g. while the media grid is flung. Thumbnails already in memory are
+         * still shown, others show their placeholder until {@link #resume(Context)}.
+         *
+         * @param context Context the thumbnails are loaded with
+         */
+        void pause(Context context);
+
+        /**
+         * Start the thumbnail loads held back since {@link #pause(Context)}, and those requested from now on.
+         *
+         * @param context Context the thumbnails are loaded with
+         */
+        void resume(Context context);
+
+        /**
+         * Cancel what is being loaded into {@code imageView} and let go of what it shows, e.g. once its list item
+         * is recycled, so that loads for views no longer shown do not hold up the others.
+         *
+         * @param context   Context the image was loaded with
+         * @param imageView ImageView widget
+         */
+        void clear(Context context, ImageView imageView);
+    }
+
+    /**
+     * Optional for an {@link ImageEngine}: load the thumbnails of the media grid ahead of the scroll.
+     */
+    interface Preloadable {
+
+        /**
+         * Load thumbnails into memory ahead of their {@link ImageEngine#loadThumbnail} or
+         * {@link ImageEngine#loadGifThumbnail}, at a lower priority than loads for views. What an earlier call
+         * asked for and is not loaded yet may be dropped.
+         *
+         * @param context Context
+         * @param resize  Desired size of the origin images, as they will be loaded for views
+         * @param uris    Uris of the loaded images, most wanted first
+         */
+        void preload(Context context, int resize, List<Uri> uris);
+    }
+
+    /**
+     * Optional for an {@link ImageEngine}: show the thumbnail of an item while its preview loads.
+     */
+    interface ThumbnailPreviewable {
+
+        /**
+         * Load a static image resource like {@link ImageEngine#loadImage}, showing its thumbnail as loaded by
+         * {@link ImageEngine#loadThumbnail} at {@code thumbnailResize}, scaled up, until the image replaces it.
+         * The thumbnail is meant to be shown at once from memory, e.g. when opening the preview of a tile of the
+         * media grid.
+         *
+         * @param context         Context
+         * @param thumbnailResize Desired size of the origin image, as its thumbnail was loaded
+         * @param resizeX         Desired x-size of the origin image
+         * @param resizeY         Desired y-size of the origin image
+         * @param imageView       ImageView widget
+         * @param uri             Uri of the loaded image
+         */
+        void loadImageWithThumbnail(Context context, int thumbnailResize, int resizeX, int resizeY,
+                                    ImageView imageView, Uri uri);
+    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.engine.impl;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.internal.utils.ExifInterfaceCompat;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Downsampled decoding with {@link BitmapFactory} and the transformations applied to what is decoded, all drawing
+ * into bitmaps of a {@link BitmapPool} where possible. Intermediate bitmaps go back to the pool. Thread safe.
+ */
+final class BitmapDecoder {
+    private static final Uri FILES_URI = MediaStore.Files.getContentUri("external");
+    private static final String[] PROJECTION_STATE = {
+            MediaStore.MediaColumns.DATE_MODIFIED,
+            MediaStore.Images.ImageColumns.ORIENTATION};
+    private static final Paint PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    private final BitmapPool mPool;
+
+    BitmapDecoder(BitmapPool pool) {
+        mPool = pool;
+    }
+
+    /**
+     * Decode the file at {@code path}, or else {@code uri}, at the largest power of two downsampling that keeps it
+     * at least {@code width} x {@code height}.
+     *
+     * @param config preferred, images with alpha may still be decoded with another.
+     * @return a mutable bitmap, or null if it cannot be decoded.
+     */
+    Bitmap decode(Context context, Uri uri, String path, int width, int height, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(context, uri, path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        options.inMutable = true;
+        options.inBitmap = mPool.get((options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize, config);
+        try {
+            Bitmap bitmap = decodeStream(context, uri, path, options);
+            if (bitmap == null && options.inBitmap != null) {
+                mPool.put(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // decoded with another config than the one preferred, and larger than the pooled bitmap
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return decodeStream(context, uri, path, options);
+        }
+    }
+
+    /**
+     * Decode an encoded {@code width} x {@code height} bitmap.
+     *
+     * @return a mutable bitmap, or null if it cannot be decoded.
+     */
+    Bitmap decode(byte[] data, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = mPool.get(width, height, Bitmap.Config.RGB_565);
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (bitmap == null && options.inBitmap != null) {
+                mPool.put(options.inBitmap);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // encoded with alpha
+            mPool.put(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * @return a frame of the video at {@code uri}, or null if there is none.
+     */
+    Bitmap decodeVideoFrame(Context context, Uri uri) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            return retriever.getFrameAtTime();
+        } catch (RuntimeException e) {
+            return null;
+        } finally {
+            retriever.release();
+        }
+    }
+
+    /**
+     * @return the center square of {@code source} rotated clockwise by {@code orientation} degrees and scaled to
+     * {@code size}. {@code source} is pooled unless returned.
+     */
+    Bitmap crop(Bitmap source, int orientation, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (orientation == 0 && width == size && height == size) {
+            return source;
+        }
+        int edge = Math.min(width, height);
+        Matrix matrix = new Matrix();
+        matrix.setTranslate(-(width - edge) / 2, -(height - edge) / 2);
+        matrix.postRotate(orientation, edge / 2f, edge / 2f);
+        matrix.postScale((float) size / edge, (float) size / edge);
+        return draw(source, matrix, size, size);
+    }
+
+    /**
+     * @return {@code source} rotated clockwise by {@code orientation} degrees and scaled down to fit in
+     * {@code width} x {@code height}. {@code source} is pooled unless returned.
+     */
+    Bitmap fit(Bitmap source, int orientation, int width, int height) {
+        boolean sideways = orientation % 180 != 0;
+        int rotatedWidth = sideways ? source.getHeight() : source.getWidth();
+        int rotatedHeight = sideways ? source.getWidth() : source.getHeight();
+        float scale = Math.min(1f, Math.min((float) width / rotatedWidth, (float) height / rotatedHeight));
+        if (orientation == 0 && scale == 1f) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.setRotate(orientation, source.getWidth() / 2f, source.getHeight() / 2f);
+        matrix.postTranslate((rotatedWidth - source.getWidth()) / 2f, (rotatedHeight - source.getHeight()) / 2f);
+        matrix.postScale(scale, scale);
+        return draw(source, matrix, Math.max(1, Math.round(rotatedWidth * scale)),
+                Math.max(1, Math.round(rotatedHeight * scale)));
+    }
+
+    private Bitmap draw(Bitmap source, Matrix matrix, int width, int height) {
+        Bitmap.Config config = source.getConfig() != null ? source.getConfig() : Bitmap.Config.ARGB_8888;
+        Bitmap target = mPool.get(width, height, config);
+        if (target == null) {
+            target = Bitmap.createBitmap(width, height, config);
+        } else if (source.hasAlpha()) {
+            target.eraseColor(Color.TRANSPARENT);
+        }
+        target.setHasAlpha(source.hasAlpha());
+        new Canvas(target).drawBitmap(source, matrix, PAINT);
+        mPool.put(source);
+        return target;
+    }
+
+    private static Bitmap decodeStream(Context context, Uri uri, String path, BitmapFactory.Options options) {
+        InputStream in = null;
+        try {
+            in = path != null ? new FileInputStream(path) : context.getContentResolver().openInputStream(uri);
+            return in == null ? null : BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | SecurityException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return clockwise rotation of the image in degrees, from the media store for its items and from the EXIF
+     * data of files.
+     */
+    static int orientationOf(Context context, Uri uri) {
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            return Math.max(0, ExifInterfaceCompat.getExifOrientation(uri.getPath()));
+        }
+        long id = mediaIdOf(uri);
+        MediaState state = id == -1 ? null : queryMediaState(context, id);
+        return state == null ? 0 : state.mOrientation;
+    }
+
+    /**
+     * @return state of the media store item, or null if there is none with this id.
+     */
+    static MediaState queryMediaState(Context context, long id) {
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(ContentUris.withAppendedId(FILES_URI, id),
+                    PROJECTION_STATE, null, null, null);
+            return cursor != null && cursor.moveToFirst() ? new MediaState(cursor.getLong(0), cursor.getInt(1)) : null;
+        } catch (SecurityException e) {
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * @return id of the media store item at {@code uri}, or -1 if it is not one.
+     */
+    static long mediaIdOf(Uri uri) {
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                || !MediaStore.AUTHORITY.equals(uri.getAuthority())) {
+            return -1;
+        }
+        try {
+            return ContentUris.parseId(uri);
+        } catch (NumberFormatException | UnsupportedOperationException e) {
+            return -1;
+        }
+    }
+
+    static boolean isVideo(Context context, Uri uri) {
+        if (mediaIdOf(uri) != -1) {
+            return uri.getPathSegments().contains("video");
+        }
+        String type = ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())
+                ? context.getContentResolver().getType(uri) : null;
+        return type != null && type.startsWith("video/");
+    }
+
+    /**
+     * What a decode of a media store item depends on, read in one query.
+     */
+    static final class MediaState {
+        // in seconds
+        final long mModified;
+        // clockwise, in degrees; 0 for videos
+        final int mOrientation;
+
+        MediaState(long modified, int orientation) {
+            mModified = modified;
+            mOrientation = orientation;
+        }
+    }
+}
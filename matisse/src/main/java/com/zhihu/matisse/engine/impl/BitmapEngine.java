@@ -0,0 +1,447 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.engine.impl;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.engine.ImageEngine;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.DecodeQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * {@link ImageEngine} implementation without an image library, decoding with {@link android.graphics.BitmapFactory}
+ * downsampled to the requested size. Thumbnails are kept in memory, up to an eighth of the heap, and bitmaps no
+ * longer cached nor shown are reused for later decodes; both are released once the app's UI is hidden or memory
+ * runs low. Tiles of media store items are also kept on disk, see
+ * {@link ThumbnailStore}. Decoding runs on the {@link SelectionSpec#decodeExecutor decode lane}, a few at a time,
+ * newest request first, so that the tiles just bound come before those already scrolled past, and preloads only
+ * once no view waits; a request replaced by another for the same view is skipped.
+ * Animated gif is not supported.
+ */
+public class BitmapEngine implements ImageEngine, ImageEngine.Controllable, ImageEngine.Preloadable,
+        ImageEngine.ThumbnailPreviewable {
+    private static final int CACHE_HEAP_DIVISOR = 8;
+    private static final int POOL_HEAP_DIVISOR = 16;
+    private static final int MAX_DECODES = 4;
+    // preloads taken from one call, the rest of it is dropped
+    private static final int MAX_PRELOADS = 32;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final BitmapPool mPool = new BitmapPool((int) (Runtime.getRuntime().maxMemory() / POOL_HEAP_DIVISOR));
+    private final BitmapDecoder mDecoder = new BitmapDecoder(mPool);
+    private final DecodeQueue mExecutor = newDecodeQueue();
+    private final LruCache<String, Bitmap> mCache =
+            new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / CACHE_HEAP_DIVISOR)) {
+                @Override
+                protected int sizeOf(String key, Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
+
+                @Override
+                protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                    if (oldValue != newValue) {
+                        release(oldValue);
+                    }
+                }
+            };
+    // main thread only: how many views show each bitmap, and those shown but not cached
+    private final Map<Bitmap, Integer> mShownCounts = new WeakHashMap<>();
+    private final Set<Bitmap> mUncached = Collections.newSetFromMap(new WeakHashMap<Bitmap, Boolean>());
+    // main thread only: thumbnail loads held back while paused
+    private final List<Request> mPending = new ArrayList<>();
+    private boolean mPaused;
+    // main thread only: preloads not finished yet, by cache key
+    private final Map<String, Request> mPreloads = new HashMap<>();
+    private boolean mTrimRegistered;
+
+    @Override
+    public void loadThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView, Uri uri) {
+        load(context, resize, resize, placeholder, null, imageView, uri, true);
+    }
+
+    @Override
+    public void loadGifThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView,
+                                 Uri uri) {
+        loadThumbnail(context, resize, placeholder, imageView, uri);
+    }
+
+    @Override
+    public void loadImage(Context context, int resizeX, int resizeY, ImageView imageView, Uri uri) {
+        load(context, resizeX, resizeY, null, null, imageView, uri, false);
+    }
+
+    @Override
+    public void loadImageWithThumbnail(Context context, int thumbnailResize, int resizeX, int resizeY,
+                                       ImageView imageView, Uri uri) {
+        // only from memory, decoding the thumbnail as well would delay the image
+        Bitmap thumbnail = mCache.get(thumbnailKey(thumbnailResize, uri));
+        load(context, resizeX, resizeY, null, thumbnail, imageView, uri, false);
+    }
+
+    @Override
+    public void loadGifImage(Context context, int resizeX, int resizeY, ImageView imageView, Uri uri) {
+        loadImage(context, resizeX, resizeY, imageView, uri);
+    }
+
+    @Override
+    public void pause(Context context) {
+        mPaused = true;
+    }
+
+    @Override
+    public void resume(Context context) {
+        mPaused = false;
+        for (Request request : mPending) {
+            if (!request.mCancelled) {
+                mExecutor.execute(request);
+            }
+        }
+        mPending.clear();
+    }
+
+    @Override
+    public void preload(Context context, int resize, List<Uri> uris) {
+        for (Request request : mPreloads.values()) {
+            cancel(request);
+        }
+        mPreloads.clear();
+        if (mPaused) {
+            return;
+        }
+        final Context appContext = context.getApplicationContext();
+        registerTrim(appContext);
+        for (int i = 0; i < uris.size() && i < MAX_PRELOADS; i++) {
+            final Uri uri = uris.get(i);
+            final int size = resize;
+            final String key = thumbnailKey(size, uri);
+            if (mCache.get(key) != null) {
+                continue;
+            }
+            final Request request = new Request(true);
+            request.mTask = new Runnable() {
+                @Override
+                public void run() {
+                    final Bitmap bitmap = thumbnailOf(appContext, uri, size);
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mPreloads.get(key) == request) {
+                                mPreloads.remove(key);
+                            }
+                            if (bitmap != null) {
+                                mCache.put(key, bitmap);
+                            }
+                        }
+                    });
+                }
+            };
+            mPreloads.put(key, request);
+            mExecutor.execute(request);
+        }
+    }
+
+    @Override
+    public void clear(Context context, ImageView imageView) {
+        Binding binding = (Binding) imageView.getTag(R.id.image_engine_binding);
+        if (binding == null) {
+            return;
+        }
+        if (binding.mRequest != null) {
+            cancel(binding.mRequest);
+            binding.mRequest = null;
+        }
+        show(imageView, binding, null, null);
+    }
+
+    @Override
+    public boolean supportAnimatedGif() {
+        return false;
+    }
+
+    /**
+     * Called on the decode lane, for tiles not in the {@link ThumbnailStore}.
+     *
+     * @param orientation clockwise rotation of the image in degrees.
+     * @return {@code size} x {@code size}, cropped to the center, or null if it cannot be decoded.
+     */
+    Bitmap decodeThumbnail(Context context, Uri uri, int size, int orientation) {
+        if (BitmapDecoder.isVideo(context, uri)) {
+            Bitmap frame = mDecoder.decodeVideoFrame(context, uri);
+            return frame == null ? null : mDecoder.crop(frame, 0, size);
+        }
+        // tiles are opaque, half the memory is enough; images with alpha keep it anyway
+        Bitmap bitmap = mDecoder.decode(context, uri, null, size, size, Bitmap.Config.RGB_565);
+        return bitmap == null ? null : mDecoder.crop(bitmap, orientation, size);
+    }
+
+    /**
+     * Called on the decode lane.
+     *
+     * @return the whole image within {@code width} x {@code height}, or null if it cannot be decoded.
+     */
+    Bitmap decodeImage(Context context, Uri uri, int width, int height) {
+        if (BitmapDecoder.isVideo(context, uri)) {
+            Bitmap frame = mDecoder.decodeVideoFrame(context, uri);
+            return frame == null ? null : mDecoder.fit(frame, 0, width, height);
+        }
+        int orientation = BitmapDecoder.orientationOf(context, uri);
+        boolean sideways = orientation % 180 != 0;
+        Bitmap bitmap = mDecoder.decode(context, uri, null, sideways ? height : width, sideways ? width : height,
+                Bitmap.Config.ARGB_8888);
+        return bitmap == null ? null : mDecoder.fit(bitmap, orientation, width, height);
+    }
+
+    BitmapDecoder getDecoder() {
+        return mDecoder;
+    }
+
+    /**
+     * Take the tile of a media store item from the {@link ThumbnailStore} if it was stored for the item's current
+     * modification time, or else decode and store it.
+     */
+    private Bitmap thumbnailOf(Context context, Uri uri, int size) {
+        long id = BitmapDecoder.mediaIdOf(uri);
+        BitmapDecoder.MediaState state = id == -1 ? null : BitmapDecoder.queryMediaState(context, id);
+        if (state == null) {
+            return decodeThumbnail(context, uri, size, BitmapDecoder.orientationOf(context, uri));
+        }
+        ThumbnailStore store = ThumbnailStore.get(context);
+        byte[] stored = store.read(id, state.mModified, size);
+        Bitmap tile = stored == null ? null : mDecoder.decode(stored, size, size);
+        if (tile != null) {
+            return tile;
+        }
+        tile = decodeThumbnail(context, uri, size, state.mOrientation);
+        if (tile != null) {
+            store.write(id, state.mModified, size, tile);
+        }
+        return tile;
+    }
+
+    /**
+     * @param interim shown until the bitmap loaded replaces it, instead of {@code placeholder}.
+     */
+    private void load(Context context, final int width, final int height, Drawable placeholder, Bitmap interim,
+                      final ImageView imageView, final Uri uri, final boolean thumbnail) {
+        final Binding binding = bindingOf(imageView);
+        if (binding.mRequest != null) {
+            cancel(binding.mRequest);
+            binding.mRequest = null;
+        }
+        final String key = thumbnail ? thumbnailKey(width, uri) : width + "x" + height + ":" + uri;
+        Bitmap cached = thumbnail ? mCache.get(key) : null;
+        if (cached != null) {
+            show(imageView, binding, cached, null);
+            return;
+        }
+        show(imageView, binding, interim, placeholder);
+        Request preload = mPreloads.remove(key);
+        if (preload != null) {
+            // decoded again below, at the priority of a visible tile
+            cancel(preload);
+        }
+        final Request request = new Request(false);
+        binding.mRequest = request;
+        final Context appContext = context.getApplicationContext();
+        registerTrim(appContext);
+        request.mTask = new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = thumbnail
+                        ? thumbnailOf(appContext, uri, width) : decodeImage(appContext, uri, width, height);
+                if (bitmap == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (thumbnail) {
+                            mCache.put(key, bitmap);
+                        } else {
+                            mUncached.add(bitmap);
+                        }
+                        if (binding.mRequest == request) {
+                            binding.mRequest = null;
+                            show(imageView, binding, bitmap, null);
+                        } else if (!thumbnail) {
+                            release(bitmap);
+                        }
+                    }
+                });
+            }
+        };
+        if (mPaused && thumbnail) {
+            mPending.add(request);
+        } else {
+            mExecutor.execute(request);
+        }
+    }
+
+    /**
+     * Skip {@code request} if it has not started, and take it off the queue.
+     */
+    private void cancel(Request request) {
+        request.mCancelled = true;
+        if (!mExecutor.remove(request)) {
+            mPending.remove(request);
+        }
+    }
+
+    /**
+     * Release the cache and the pool along with the app's memory, the engine outlives the picker in the
+     * {@link SelectionSpec}.
+     */
+    private void registerTrim(Context appContext) {
+        if (mTrimRegistered) {
+            return;
+        }
+        mTrimRegistered = true;
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                    trim();
+                }
+            }
+
+            @Override
+            public void onLowMemory() {
+                trim();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+
+    private void trim() {
+        // bitmaps still shown are pooled once no longer shown
+        mCache.evictAll();
+        mPool.clear();
+    }
+
+    private static String thumbnailKey(int size, Uri uri) {
+        return size + ":" + uri;
+    }
+
+    /**
+     * Show {@code bitmap}, or else {@code placeholder}, and release what was shown before.
+     */
+    private void show(ImageView imageView, Binding binding, Bitmap bitmap, Drawable placeholder) {
+        Bitmap previous = binding.mShown;
+        binding.mShown = bitmap;
+        if (bitmap != null) {
+            Integer count = mShownCounts.get(bitmap);
+            mShownCounts.put(bitmap, count == null ? 1 : count + 1);
+            imageView.setImageBitmap(bitmap);
+        } else {
+            imageView.setImageDrawable(placeholder);
+        }
+        if (previous != null) {
+            Integer count = mShownCounts.get(previous);
+            if (count == null || count <= 1) {
+                mShownCounts.remove(previous);
+                if (mUncached.remove(previous)) {
+                    mPool.put(previous);
+                }
+            } else {
+                mShownCounts.put(previous, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Pool {@code bitmap}, no longer cached, once no view shows it.
+     */
+    private void release(Bitmap bitmap) {
+        if (mShownCounts.containsKey(bitmap)) {
+            mUncached.add(bitmap);
+        } else {
+            mUncached.remove(bitmap);
+            mPool.put(bitmap);
+        }
+    }
+
+    private static Binding bindingOf(ImageView imageView) {
+        Binding binding = (Binding) imageView.getTag(R.id.image_engine_binding);
+        if (binding == null) {
+            binding = new Binding();
+            imageView.setTag(R.id.image_engine_binding, binding);
+        }
+        return binding;
+    }
+
+    private static DecodeQueue newDecodeQueue() {
+        int decodes = Math.max(1, Math.min(MAX_DECODES, Runtime.getRuntime().availableProcessors() - 1));
+        return new DecodeQueue(decodes, new Comparator<Runnable>() {
+            @Override
+            public int compare(Runnable a, Runnable b) {
+                // requests for views before preloads, then newest first
+                boolean first = ((Request) a).mPreload;
+                boolean second = ((Request) b).mPreload;
+                return first == second ? 0 : (first ? 1 : -1);
+            }
+        });
+    }
+
+    /**
+     * What an image view shows and is loading, kept in its tag.
+     */
+    private static final class Binding {
+        private Bitmap mShown;
+        private Request mRequest;
+    }
+
+    /**
+     * A load, skipped if cancelled before it starts.
+     */
+    private static final class Request implements Runnable {
+        private final boolean mPreload;
+        private Runnable mTask;
+        private volatile boolean mCancelled;
+
+        Request(boolean preload) {
+            mPreload = preload;
+        }
+
+        @Override
+        public void run() {
+            if (!mCancelled) {
+                mTask.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.engine.impl;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Mutable bitmaps no longer shown, by allocation size, to decode or draw into instead of allocating. Any of them
+ * can be reconfigured to a size and config that fit its allocation. When full, the largest are dropped first, since
+ * tiles are by far the most reused. Thread safe.
+ */
+final class BitmapPool {
+    // a bitmap more than this many times the size needed wastes more than it saves
+    private static final int MAX_OVERSIZE = 2;
+
+    private final int mMaxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBitmaps = new TreeMap<>();
+    private int mBytes;
+
+    BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return a bitmap of the given size and config with undefined content, or null if none fits.
+     */
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        int bytes = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = mBitmaps.ceilingEntry(bytes);
+        if (entry == null || entry.getKey() > bytes * MAX_OVERSIZE) {
+            return null;
+        }
+        Bitmap bitmap = entry.getValue().poll();
+        if (entry.getValue().isEmpty()) {
+            mBitmaps.remove(entry.getKey());
+        }
+        mBytes -= entry.getKey();
+        bitmap.reconfigure(width, height, config);
+        return bitmap;
+    }
+
+    /**
+     * Keep {@code bitmap} for reuse. It must not be shown anywhere anymore.
+     */
+    synchronized void put(Bitmap bitmap) {
+        int bytes = bitmap.isRecycled() ? 0 : bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bytes == 0 || bytes > mMaxBytes / 2) {
+            return;
+        }
+        ArrayDeque<Bitmap> bitmaps = mBitmaps.get(bytes);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<>();
+            mBitmaps.put(bytes, bitmaps);
+        }
+        bitmaps.push(bitmap);
+        mBytes += bytes;
+        while (mBytes > mMaxBytes) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = mBitmaps.lastEntry();
+            largest.getValue().poll().recycle();
+            if (largest.getValue().isEmpty()) {
+                mBitmaps.remove(largest.getKey());
+            }
+            mBytes -= largest.getKey();
+        }
+    }
+
+    /**
+     * Drop every bitmap kept.
+     */
+    synchronized void clear() {
+        for (ArrayDeque<Bitmap> bitmaps : mBitmaps.values()) {
+            for (Bitmap bitmap : bitmaps) {
+                bitmap.recycle();
+            }
+        }
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else {
+            return 4;
+        }
+    }
+}
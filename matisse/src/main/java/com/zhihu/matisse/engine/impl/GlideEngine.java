@@ -22,13 +22,19 @@ import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.Priority;
+import com.bumptech.glide.request.target.Target;
 import com.zhihu.matisse.engine.ImageEngine;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * {@link ImageEngine} implementation using Glide.
  */
 
-public class GlideEngine implements ImageEngine {
+public class GlideEngine implements ImageEngine, ImageEngine.Controllable, ImageEngine.Preloadable,
+        ImageEngine.ThumbnailPreviewable {
+    private final List<Target<?>> mPreloads = new ArrayList<>();
 
     @Override
     public void loadThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView, Uri uri) {
@@ -62,6 +68,23 @@ public class GlideEngine implements ImageEngine {
                 .into(imageView);
     }
 
+    @Override
+    public void loadImageWithThumbnail(Context context, int thumbnailResize, int resizeX, int resizeY,
+                                       ImageView imageView, Uri uri) {
+        // both as bitmaps, the thumbnail is only found in the memory cache under the key loadThumbnail used
+        Glide.with(context)
+                .load(uri)
+                .asBitmap()
+                .override(resizeX, resizeY)
+                .priority(Priority.HIGH)
+                .thumbnail(Glide.with(context)
+                        .load(uri)
+                        .asBitmap()
+                        .override(thumbnailResize, thumbnailResize)
+                        .centerCrop())
+                .into(imageView);
+    }
+
     @Override
     public void loadGifImage(Context context, int resizeX, int resizeY, ImageView imageView, Uri uri) {
         Glide.with(context)
@@ -72,6 +95,39 @@ public class GlideEngine implements ImageEngine {
                 .into(imageView);
     }
 
+    @Override
+    public void preload(Context context, int resize, List<Uri> uris) {
+        for (Target<?> target : mPreloads) {
+            Glide.clear(target);
+        }
+        mPreloads.clear();
+        for (Uri uri : uris) {
+            // the same request as loadThumbnail, so that the preloaded bitmap is found under its key
+            mPreloads.add(Glide.with(context)
+                    .load(uri)
+                    .asBitmap()
+                    .override(resize, resize)
+                    .centerCrop()
+                    .priority(Priority.LOW)
+                    .preload(resize, resize));
+        }
+    }
+
+    @Override
+    public void pause(Context context) {
+        Glide.with(context).pauseRequests();
+    }
+
+    @Override
+    public void resume(Context context) {
+        Glide.with(context).resumeRequests();
+    }
+
+    @Override
+    public void clear(Context context, ImageView imageView) {
+        Glide.clear(imageView);
+    }
+
     @Override
     public boolean supportAnimatedGif() {
         return true;
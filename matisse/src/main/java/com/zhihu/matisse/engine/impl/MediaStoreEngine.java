@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.engine.impl;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+/**
+ * {@link BitmapEngine} which loads thumbnails from the micro and mini thumbnails the media store keeps for most
+ * images and videos rather than from the originals. Media without a stored thumbnail, and full size images, are
+ * decoded like {@link BitmapEngine} does.
+ */
+public class MediaStoreEngine extends BitmapEngine {
+    // edge of the media store's MICRO_KIND thumbnails, and short edge of its MINI_KIND ones
+    private static final int MICRO_SIZE = 96;
+    private static final int MINI_SIZE = 384;
+    private static final String[] PROJECTION_THUMBNAIL = {MediaStore.MediaColumns.DATA};
+
+    @Override
+    Bitmap decodeThumbnail(Context context, Uri uri, int size, int orientation) {
+        long id = BitmapDecoder.mediaIdOf(uri);
+        boolean video = id != -1 && BitmapDecoder.isVideo(context, uri);
+        // stored thumbnails smaller than the tile would look blurred, larger tiles of images take the original
+        if (id != -1 && (video || size <= MINI_SIZE)) {
+            int kind = size <= MICRO_SIZE
+                    ? MediaStore.Images.Thumbnails.MICRO_KIND : MediaStore.Images.Thumbnails.MINI_KIND;
+            String path = queryThumbnailPath(context, id, kind, video);
+            Bitmap bitmap = path == null
+                    ? null : getDecoder().decode(context, null, path, size, size, Bitmap.Config.RGB_565);
+            if (bitmap != null) {
+                return getDecoder().crop(bitmap, video ? 0 : orientation, size);
+            }
+        }
+        return super.decodeThumbnail(context, uri, size, orientation);
+    }
+
+    private static String queryThumbnailPath(Context context, long id, int kind, boolean video) {
+        Uri table = video
+                ? MediaStore.Video.Thumbnails.EXTERNAL_CONTENT_URI : MediaStore.Images.Thumbnails.EXTERNAL_CONTENT_URI;
+        String idColumn = video ? MediaStore.Video.Thumbnails.VIDEO_ID : MediaStore.Images.Thumbnails.IMAGE_ID;
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(table, PROJECTION_THUMBNAIL,
+                    idColumn + "=? AND " + MediaStore.Images.Thumbnails.KIND + "=?",
+                    new String[]{String.valueOf(id), String.valueOf(kind)}, null);
+            return cursor != null && cursor.moveToFirst() ? cursor.getString(0) : null;
+        } catch (SecurityException e) {
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
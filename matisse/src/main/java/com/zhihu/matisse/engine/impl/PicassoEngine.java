@@ -20,15 +20,23 @@ import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.widget.ImageView;
 
+import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.internal.utils.ExifInterfaceCompat;
 
+import java.util.List;
+
 /**
  * {@link ImageEngine} implementation using Picasso.
  */
 
-public class PicassoEngine implements ImageEngine {
+public class PicassoEngine implements ImageEngine, ImageEngine.Controllable, ImageEngine.Preloadable,
+        ImageEngine.ThumbnailPreviewable {
+    // thumbnail requests, paused and resumed together
+    private static final Object THUMBNAIL_TAG = new Object();
+    private static final Object PRELOAD_TAG = new Object();
 
     @Override
     public void loadThumbnail(Context context, int resize, Drawable placeholder, ImageView imageView, Uri uri) {
@@ -38,6 +46,7 @@ public class PicassoEngine implements ImageEngine {
                 .placeholder(placeholder)
                 .resize(resize, resize)
                 .centerCrop()
+                .tag(THUMBNAIL_TAG)
                 .into(imageView);
     }
 
@@ -58,11 +67,78 @@ public class PicassoEngine implements ImageEngine {
                 .into(imageView);
     }
 
+    @Override
+    public void loadImageWithThumbnail(Context context, int thumbnailResize, int resizeX, int resizeY,
+                                       ImageView imageView, Uri uri) {
+        // into() shows a bitmap of the memory cache before it returns, anything else would be decoded first
+        final boolean[] inMemory = new boolean[1];
+        Picasso.with(context)
+                .load(uri)
+                .rotate(ExifInterfaceCompat.getExifOrientation(uri.getPath()))
+                .resize(thumbnailResize, thumbnailResize)
+                .centerCrop()
+                .noFade()
+                .into(imageView, new Callback() {
+                    @Override
+                    public void onSuccess() {
+                        inMemory[0] = true;
+                    }
+
+                    @Override
+                    public void onError() {
+                    }
+                });
+        // replaces the thumbnail request, which is cancelled when it was not in memory
+        RequestCreator request = Picasso.with(context)
+                .load(uri)
+                .rotate(ExifInterfaceCompat.getExifOrientation(uri.getPath()))
+                .resize(resizeX, resizeY)
+                .priority(Picasso.Priority.HIGH)
+                .centerInside();
+        if (inMemory[0] && imageView.getDrawable() != null) {
+            request.noFade().placeholder(imageView.getDrawable());
+        }
+        request.into(imageView);
+    }
+
     @Override
     public void loadGifImage(Context context, int resizeX, int resizeY, ImageView imageView, Uri uri) {
         loadImage(context, resizeX, resizeY, imageView, uri);
     }
 
+    @Override
+    public void preload(Context context, int resize, List<Uri> uris) {
+        Picasso picasso = Picasso.with(context);
+        picasso.cancelTag(PRELOAD_TAG);
+        for (Uri uri : uris) {
+            // the same request as loadThumbnail, so that the preloaded bitmap is found under its key
+            picasso.load(uri)
+                    .rotate(ExifInterfaceCompat.getExifOrientation(uri.getPath()))
+                    .resize(resize, resize)
+                    .centerCrop()
+                    .priority(Picasso.Priority.LOW)
+                    .tag(PRELOAD_TAG)
+                    .fetch();
+        }
+    }
+
+    @Override
+    public void pause(Context context) {
+        Picasso.with(context).pauseTag(THUMBNAIL_TAG);
+        Picasso.with(context).pauseTag(PRELOAD_TAG);
+    }
+
+    @Override
+    public void resume(Context context) {
+        Picasso.with(context).resumeTag(THUMBNAIL_TAG);
+        Picasso.with(context).resumeTag(PRELOAD_TAG);
+    }
+
+    @Override
+    public void clear(Context context, ImageView imageView) {
+        Picasso.with(context).cancelRequest(imageView);
+    }
+
     @Override
     public boolean supportAnimatedGif() {
         return false;
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.engine.impl;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.annotation.WorkerThread;
+
+import com.zhihu.matisse.internal.utils.LongIntHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * App-private store of decoded tiles, so that thumbnails shown once are not decoded from the originals again after
+ * the process dies. A tile is kept per media store id, along with the modification time and size it was made for;
+ * an edited item or another tile size misses and is replaced.
+ * <p>
+ * Tiles are appended to a data file of records, each with its key, and read through a memory mapped buffer. An
+ * index file holds the offset of every tile, as of some length of the data file; records appended after it are
+ * found by reading their keys on open, and a record cut short by the process dying is dropped. When the data file
+ * grows over its bound, the tiles used last are copied to a new one and the others are dropped.
+ */
+@WorkerThread
+final class ThumbnailStore {
+    private static final String DIRECTORY = "matisse";
+    private static final String FILE_DATA = "thumbnails.dat";
+    private static final String FILE_INDEX = "thumbnails.idx";
+    private static final int MAGIC = 0x4d545854; // "MTXT"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4;
+    private static final int RECORD_HEADER_SIZE = 8 + 8 + 4 + 4;
+    private static final int MAX_BYTES = 32 * 1024 * 1024;
+    // share of the bound kept by a compaction, so that it is not needed again right away
+    private static final float COMPACTED_SHARE = 0.75f;
+    private static final int APPENDS_PER_INDEX_SAVE = 32;
+    private static final int JPEG_QUALITY = 85;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static ThumbnailStore sInstance;
+
+    private final File mDataFile;
+    private final File mIndexFile;
+    private RandomAccessFile mData;
+    private MappedByteBuffer mBuffer;
+    private long mDataLength;
+    private int mAppendsSinceSave;
+
+    private final LongIntHashMap mSlots = new LongIntHashMap(-1, INITIAL_CAPACITY);
+    private int mCount;
+    private long[] mIds = new long[INITIAL_CAPACITY];
+    private long[] mModified = new long[INITIAL_CAPACITY];
+    private int[] mSizes = new int[INITIAL_CAPACITY];
+    private long[] mOffsets = new long[INITIAL_CAPACITY];
+    private int[] mLengths = new int[INITIAL_CAPACITY];
+    // last read or write of each slot, for compaction
+    private long[] mLastUse = new long[INITIAL_CAPACITY];
+    private long mClock;
+
+    private ThumbnailStore(File directory) {
+        mDataFile = new File(directory, FILE_DATA);
+        mIndexFile = new File(directory, FILE_INDEX);
+        if (directory.isDirectory() || directory.mkdirs()) {
+            reopen();
+        }
+    }
+
+    /**
+     * @return the store of this process, opened on first use.
+     */
+    static synchronized ThumbnailStore get(Context context) {
+        if (sInstance == null) {
+            sInstance = new ThumbnailStore(new File(context.getCacheDir(), DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return the encoded tile of the item, or null if there is none for this modification time and size.
+     */
+    synchronized byte[] read(long id, long modified, int size) {
+        int slot = mSlots.get(id);
+        if (mData == null || slot == -1 || mModified[slot] != modified || mSizes[slot] != size) {
+            return null;
+        }
+        ByteBuffer buffer = map(mOffsets[slot] + RECORD_HEADER_SIZE + mLengths[slot]);
+        if (buffer == null) {
+            return null;
+        }
+        byte[] data = new byte[mLengths[slot]];
+        buffer.position((int) mOffsets[slot] + RECORD_HEADER_SIZE);
+        buffer.get(data);
+        mLastUse[slot] = ++mClock;
+        return data;
+    }
+
+    /**
+     * Store {@code tile}, replacing the one stored for the item, if any.
+     */
+    void write(long id, long modified, int size, Bitmap tile) {
+        // encoded outside of the lock, reads of other tiles go on meanwhile
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[RECORD_HEADER_SIZE], 0, RECORD_HEADER_SIZE);
+        if (!tile.compress(tile.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, JPEG_QUALITY,
+                out)) {
+            return;
+        }
+        byte[] record = out.toByteArray();
+        ByteBuffer.wrap(record).putLong(id).putLong(modified).putInt(size)
+                .putInt(record.length - RECORD_HEADER_SIZE);
+        synchronized (this) {
+            if (mData == null) {
+                return;
+            }
+            try {
+                mData.seek(mDataLength);
+                mData.write(record);
+            } catch (IOException e) {
+                return;
+            }
+            put(id, modified, size, mDataLength, record.length - RECORD_HEADER_SIZE);
+            mDataLength += record.length;
+            if (mDataLength > MAX_BYTES) {
+                compact();
+            } else if (++mAppendsSinceSave >= APPENDS_PER_INDEX_SAVE) {
+                saveIndex();
+            }
+        }
+    }
+
+    private boolean open() {
+        try {
+            mData = new RandomAccessFile(mDataFile, "rw");
+            mDataLength = mData.length();
+            if (mDataLength < HEADER_SIZE) {
+                mData.setLength(0);
+                mData.writeInt(MAGIC);
+                mData.writeInt(VERSION);
+                mDataLength = HEADER_SIZE;
+                mIndexFile.delete();
+            } else if (mData.readInt() != MAGIC || mData.readInt() != VERSION) {
+                return false;
+            }
+            long covered = loadIndex();
+            ByteBuffer buffer = map(mDataLength);
+            if (buffer == null) {
+                return false;
+            }
+            // records appended since the index was saved
+            long offset = covered;
+            while (offset + RECORD_HEADER_SIZE <= mDataLength) {
+                buffer.position((int) offset);
+                long id = buffer.getLong();
+                long modified = buffer.getLong();
+                int size = buffer.getInt();
+                int length = buffer.getInt();
+                if (length < 0 || offset + RECORD_HEADER_SIZE + length > mDataLength) {
+                    // cut short
+                    break;
+                }
+                put(id, modified, size, offset, length);
+                offset += RECORD_HEADER_SIZE + length;
+            }
+            if (offset != mDataLength) {
+                mBuffer = null;
+                mData.setLength(offset);
+                mDataLength = offset;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return length of the data file the index covers, {@link #HEADER_SIZE} if there is no valid index.
+     */
+    private long loadIndex() {
+        ByteBuffer buffer = mapFile(mIndexFile);
+        try {
+            if (buffer == null || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return HEADER_SIZE;
+            }
+            long covered = buffer.getLong();
+            int count = buffer.getInt();
+            if (covered > mDataLength) {
+                return HEADER_SIZE;
+            }
+            for (int i = 0; i < count; i++) {
+                long id = buffer.getLong();
+                long modified = buffer.getLong();
+                int size = buffer.getInt();
+                long offset = buffer.getLong();
+                int length = buffer.getInt();
+                if (offset < HEADER_SIZE || length < 0 || offset + RECORD_HEADER_SIZE + length > covered) {
+                    clear();
+                    return HEADER_SIZE;
+                }
+                put(id, modified, size, offset, length);
+            }
+            return covered;
+        } catch (RuntimeException e) {
+            clear();
+            return HEADER_SIZE;
+        }
+    }
+
+    private void saveIndex() {
+        mAppendsSinceSave = 0;
+        File temporary = new File(mIndexFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mDataLength);
+            out.writeInt(mCount);
+            for (int i = 0; i < mCount; i++) {
+                out.writeLong(mIds[i]);
+                out.writeLong(mModified[i]);
+                out.writeInt(mSizes[i]);
+                out.writeLong(mOffsets[i]);
+                out.writeInt(mLengths[i]);
+            }
+            out.close();
+            out = null;
+            if (!temporary.renameTo(mIndexFile)) {
+                temporary.delete();
+            }
+        } catch (IOException e) {
+            temporary.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the tiles used last, up to {@link #COMPACTED_SHARE} of the bound, to a new data file.
+     */
+    private void compact() {
+        ByteBuffer buffer = map(mDataLength);
+        int count = mCount;
+        final long[] lastUse = Arrays.copyOf(mLastUse, count);
+        Integer[] slots = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = i;
+        }
+        Arrays.sort(slots, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                // most recently used first
+                return lastUse[b] < lastUse[a] ? -1 : (lastUse[b] > lastUse[a] ? 1 : 0);
+            }
+        });
+        // slots are rewritten while copying
+        long[] ids = Arrays.copyOf(mIds, count);
+        long[] modified = Arrays.copyOf(mModified, count);
+        int[] sizes = Arrays.copyOf(mSizes, count);
+        long[] offsets = Arrays.copyOf(mOffsets, count);
+        int[] lengths = Arrays.copyOf(mLengths, count);
+        File temporary = new File(mDataFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long length = HEADER_SIZE;
+            clear();
+            byte[] data = new byte[0];
+            for (int i = 0; i < count && buffer != null; i++) {
+                int slot = slots[i];
+                if (length + RECORD_HEADER_SIZE + lengths[slot] > MAX_BYTES * COMPACTED_SHARE) {
+                    break;
+                }
+                if (data.length < RECORD_HEADER_SIZE + lengths[slot]) {
+                    data = new byte[RECORD_HEADER_SIZE + lengths[slot]];
+                }
+                buffer.position((int) offsets[slot]);
+                buffer.get(data, 0, RECORD_HEADER_SIZE + lengths[slot]);
+                out.write(data, 0, RECORD_HEADER_SIZE + lengths[slot]);
+                put(ids[slot], modified[slot], sizes[slot], length, lengths[slot]);
+                mLastUse[mCount - 1] = lastUse[slot];
+                length += RECORD_HEADER_SIZE + lengths[slot];
+            }
+            out.close();
+            out = null;
+            close();
+            // the old index must not be read along with the new data if the process dies before it is saved
+            mIndexFile.delete();
+            if (!temporary.renameTo(mDataFile)) {
+                throw new IOException("Failed to replace " + mDataFile);
+            }
+            mData = new RandomAccessFile(mDataFile, "rw");
+            mDataLength = length;
+            saveIndex();
+        } catch (IOException e) {
+            temporary.delete();
+            // start over rather than keep an index that may not match the data
+            close();
+            mIndexFile.delete();
+            mDataFile.delete();
+            reopen();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Open the files, or else start over with new ones; the store is disabled if neither works.
+     */
+    private void reopen() {
+        if (open()) {
+            return;
+        }
+        close();
+        clear();
+        mIndexFile.delete();
+        mDataFile.delete();
+        if (!open()) {
+            close();
+            clear();
+        }
+    }
+
+    private void put(long id, long modified, int size, long offset, int length) {
+        int slot = mSlots.get(id);
+        if (slot == -1) {
+            if (mCount == mIds.length) {
+                int capacity = mCount * 2;
+                mIds = Arrays.copyOf(mIds, capacity);
+                mModified = Arrays.copyOf(mModified, capacity);
+                mSizes = Arrays.copyOf(mSizes, capacity);
+                mOffsets = Arrays.copyOf(mOffsets, capacity);
+                mLengths = Arrays.copyOf(mLengths, capacity);
+                mLastUse = Arrays.copyOf(mLastUse, capacity);
+            }
+            slot = mCount++;
+            mSlots.put(id, slot);
+        }
+        mIds[slot] = id;
+        mModified[slot] = modified;
+        mSizes[slot] = size;
+        mOffsets[slot] = offset;
+        mLengths[slot] = length;
+        mLastUse[slot] = ++mClock;
+    }
+
+    private void clear() {
+        mSlots.clear();
+        mCount = 0;
+    }
+
+    /**
+     * @return a buffer over the data file covering at least {@code end}, or null if it cannot be mapped.
+     */
+    private ByteBuffer map(long end) {
+        if (mBuffer == null || mBuffer.capacity() < end) {
+            try {
+                mBuffer = mData.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, mDataLength);
+            } catch (IOException e) {
+                mBuffer = null;
+                return null;
+            }
+        }
+        return mBuffer.capacity() < end ? null : mBuffer;
+    }
+
+    private static ByteBuffer mapFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            // the mapping stays valid after the channel is closed
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void close() {
+        mBuffer = null;
+        if (mData != null) {
+            try {
+                mData.close();
+            } catch (IOException ignored) {
+            }
+            mData = null;
+        }
+    }
+}
@@ -59,11 +59,8 @@ public abstract class Filter {
      * Whether an {@link Item} need filtering.
      */
     protected boolean needFiltering(Context context, Item item) {
-        for (MimeType type : constraintTypes()) {
-            if (type.checkType(context.getContentResolver(), item.getContentUri())) {
-                return true;
-            }
-        }
-        return false;
+        MimeType type = item.type != null ? item.type
+                : MimeType.typeOf(context.getContentResolver(), item.getContentUri());
+        return type != null && constraintTypes().contains(type);
     }
 }
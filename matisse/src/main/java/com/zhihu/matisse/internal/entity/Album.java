@@ -16,13 +16,15 @@
  */
 package com.zhihu.matisse.internal.entity;
 
+import android.content.ContentUris;
 import android.content.Context;
 import android.database.Cursor;
+import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
-import android.provider.MediaStore;
 import android.support.annotation.Nullable;
 
+import com.zhihu.matisse.MimeType;
 import com.zhihu.matisse.R;
 import com.zhihu.matisse.internal.loader.AlbumLoader;
 
@@ -43,24 +45,34 @@ public class Album implements Parcelable {
     public static final String ALBUM_NAME_ALL = "All";
 
     private final String mId;
-    private final String mCoverPath;
+    private final long mCoverId;
+    private final String mCoverMimeType;
     private final String mDisplayName;
     private long mCount;
 
-    Album(String id, String coverPath, String albumName, long count) {
+    Album(String id, long coverId, String coverMimeType, String albumName, long count) {
         mId = id;
-        mCoverPath = coverPath;
+        mCoverId = coverId;
+        mCoverMimeType = coverMimeType;
         mDisplayName = albumName;
         mCount = count;
     }
 
     Album(Parcel source) {
         mId = source.readString();
-        mCoverPath = source.readString();
+        mCoverId = source.readLong();
+        mCoverMimeType = source.readString();
         mDisplayName = source.readString();
         mCount = source.readLong();
     }
 
+    /**
+     * The "All" album before the album list is loaded, enough to start loading its media.
+     */
+    public static Album all() {
+        return new Album(ALBUM_ID_ALL, 0, null, ALBUM_NAME_ALL, 0);
+    }
+
     /**
      * Constructs a new {@link Album} entity from the {@link Cursor}.
      * This method is not responsible for managing cursor resource, such as close, iterate, and so on.
@@ -68,7 +80,8 @@ public class Album implements Parcelable {
     public static Album valueOf(Cursor cursor) {
         return new Album(
                 cursor.getString(cursor.getColumnIndex("bucket_id")),
-                cursor.getString(cursor.getColumnIndex(MediaStore.MediaColumns.DATA)),
+                cursor.getLong(cursor.getColumnIndex(AlbumLoader.COLUMN_COVER_ID)),
+                cursor.getString(cursor.getColumnIndex(AlbumLoader.COLUMN_COVER_MIME_TYPE)),
                 cursor.getString(cursor.getColumnIndex("bucket_display_name")),
                 cursor.getLong(cursor.getColumnIndex(AlbumLoader.COLUMN_COUNT)));
     }
@@ -81,7 +94,8 @@ public class Album implements Parcelable {
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(mId);
-        dest.writeString(mCoverPath);
+        dest.writeLong(mCoverId);
+        dest.writeString(mCoverMimeType);
         dest.writeString(mDisplayName);
         dest.writeLong(mCount);
     }
@@ -90,8 +104,29 @@ public class Album implements Parcelable {
         return mId;
     }
 
-    public String getCoverPath() {
-        return mCoverPath;
+    /**
+     * @return media store id of the album's newest item, or 0 if the album is empty.
+     */
+    public long getCoverId() {
+        return mCoverId;
+    }
+
+    public String getCoverMimeType() {
+        return mCoverMimeType;
+    }
+
+    /**
+     * @return content uri of the album's cover, the same as that of the cover in the media grid, or null if the
+     * album is empty.
+     */
+    @Nullable
+    public Uri getCoverUri() {
+        if (mCoverId <= 0) {
+            return null;
+        }
+        MimeType type = MimeType.fromMimeTypeName(mCoverMimeType);
+        return ContentUris.withAppendedId(
+                Item.contentUriOf(type != null && type.isImage(), type != null && type.isVideo()), mCoverId);
     }
 
     public long getCount() {
@@ -43,23 +43,17 @@ public class Item implements Parcelable {
     public static final String ITEM_DISPLAY_NAME_CAPTURE = "Capture";
     public final long id;
     public final String mimeType;
+    // resolved once from mimeType, null if not supported
+    public final MimeType type;
     public final Uri uri;
     public final long size;
     public final long duration; // only for video, in ms
 
-    private Item(long id, String mimeType, long size, long duration) {
+    Item(long id, String mimeType, long size, long duration) {
         this.id = id;
         this.mimeType = mimeType;
-        Uri contentUri;
-        if (isImage()) {
-            contentUri = MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
-        } else if (isVideo()) {
-            contentUri = MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
-        } else {
-            // ?
-            contentUri = MediaStore.Files.getContentUri("external");
-        }
-        this.uri = ContentUris.withAppendedId(contentUri, id);
+        this.type = MimeType.fromMimeTypeName(mimeType);
+        this.uri = ContentUris.withAppendedId(contentUriOf(isImage(), isVideo()), id);
         this.size = size;
         this.duration = duration;
     }
@@ -67,6 +61,7 @@ public class Item implements Parcelable {
     private Item(Parcel source) {
         id = source.readLong();
         mimeType = source.readString();
+        type = MimeType.fromMimeTypeName(mimeType);
         uri = source.readParcelable(Uri.class.getClassLoader());
         size = source.readLong();
         duration = source.readLong();
@@ -79,6 +74,17 @@ public class Item implements Parcelable {
                 cursor.getLong(cursor.getColumnIndex("duration")));
     }
 
+    static Uri contentUriOf(boolean image, boolean video) {
+        if (image) {
+            return MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        } else if (video) {
+            return MediaStore.Video.Media.EXTERNAL_CONTENT_URI;
+        } else {
+            // ?
+            return MediaStore.Files.getContentUri("external");
+        }
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -102,30 +108,15 @@ public class Item implements Parcelable {
     }
 
     public boolean isImage() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.JPEG.toString())
-                || mimeType.equals(MimeType.PNG.toString())
-                || mimeType.equals(MimeType.GIF.toString())
-                || mimeType.equals(MimeType.BMP.toString())
-                || mimeType.equals(MimeType.WEBP.toString());
+        return type != null && type.isImage();
     }
 
     public boolean isGif() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.GIF.toString());
+        return type == MimeType.GIF;
     }
 
     public boolean isVideo() {
-        if (mimeType == null) return false;
-        return mimeType.equals(MimeType.MPEG.toString())
-                || mimeType.equals(MimeType.MP4.toString())
-                || mimeType.equals(MimeType.QUICKTIME.toString())
-                || mimeType.equals(MimeType.THREEGPP.toString())
-                || mimeType.equals(MimeType.THREEGPP2.toString())
-                || mimeType.equals(MimeType.MKV.toString())
-                || mimeType.equals(MimeType.WEBM.toString())
-                || mimeType.equals(MimeType.TS.toString())
-                || mimeType.equals(MimeType.AVI.toString());
+        return type != null && type.isVideo();
     }
 
     @Override
@@ -0,0 +1,653 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.entity;
+
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.MimeType;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of an album's media, stored column by column in primitive arrays so that binding a
+ * position reads a few array slots instead of moving a cursor and creating an {@link Item}.
+ * <p>
+ * Snapshots built by the same {@link Builder} share their arrays. A builder only writes past the end of the
+ * snapshots it has already built, so those stay valid while the next page is appended in the background.
+ * A {@link #view(int[], int) view} shares them too and only adds a position table, e.g. for one album.
+ */
+public final class MediaIndex {
+    /**
+     * Primitive storage per item: id, bucket id, date taken, date modified and size ({@code long}), mime type
+     * code, duration and bucket name code ({@code int}).
+     */
+    public static final int BYTES_PER_ITEM = 8 + 8 + 8 + 8 + 8 + 4 + 4 + 4;
+
+    private static final int FLAG_IMAGE = 1;
+    private static final int FLAG_VIDEO = 1 << 1;
+    private static final int FLAG_GIF = 1 << 2;
+
+    private static final MediaIndex EMPTY = new Builder(0).build();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Object mLineage;
+    private final int mCount;
+    private final long[] mIds;
+    private final long[] mBucketIds;
+    private final long[] mDates;
+    private final long[] mModified;
+    private final long[] mSizes;
+    private final int[] mMimeCodes;
+    private final int[] mDurations;
+    private final String[] mMimeTypes;
+    private final int[] mMimeFlags;
+    private final int[] mBucketNameCodes;
+    private final String[] mBucketNames;
+    private final long mMaxDateAdded;
+    private final long mMaxDateModified;
+    // set when built from another snapshot by removing and inserting items
+    private final Object mBaseLineage;
+    private final int mBaseCount;
+    private final int[] mRemoved;
+    private final int[] mInserted;
+    // positions of a view in the source arrays, null when the arrays are read in order
+    private final int[] mRows;
+    private final int mRowOffset;
+    private Uri[] mUris;
+
+    private MediaIndex(Builder builder) {
+        mLineage = builder.mLineage;
+        mCount = builder.mCount;
+        mIds = builder.mIds;
+        mBucketIds = builder.mBucketIds;
+        mDates = builder.mDates;
+        mModified = builder.mModified;
+        mSizes = builder.mSizes;
+        mMimeCodes = builder.mMimeCodes;
+        mDurations = builder.mDurations;
+        mMimeTypes = builder.mMimeTypes;
+        mMimeFlags = builder.mMimeFlags;
+        mBucketNameCodes = builder.mBucketNameCodes;
+        mBucketNames = builder.mBucketNames;
+        mMaxDateAdded = builder.mMaxDateAdded;
+        mMaxDateModified = builder.mMaxDateModified;
+        mBaseLineage = builder.mBaseLineage;
+        mBaseCount = builder.mBaseCount;
+        mRemoved = builder.mRemoved;
+        mInserted = builder.mInserted;
+        mRows = null;
+        mRowOffset = 0;
+    }
+
+    private MediaIndex(MediaIndex source, int[] rows, int offset) {
+        mLineage = new Object();
+        mCount = rows.length;
+        mIds = source.mIds;
+        mBucketIds = source.mBucketIds;
+        mDates = source.mDates;
+        mModified = source.mModified;
+        mSizes = source.mSizes;
+        mMimeCodes = source.mMimeCodes;
+        mDurations = source.mDurations;
+        mMimeTypes = source.mMimeTypes;
+        mMimeFlags = source.mMimeFlags;
+        mBucketNameCodes = source.mBucketNameCodes;
+        mBucketNames = source.mBucketNames;
+        mMaxDateAdded = source.mMaxDateAdded;
+        mMaxDateModified = source.mMaxDateModified;
+        mBaseLineage = null;
+        mBaseCount = 0;
+        mRemoved = null;
+        mInserted = null;
+        if (source.mRows == null) {
+            mRows = rows;
+            mRowOffset = source.mRowOffset + offset;
+        } else {
+            int[] composed = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                composed[i] = source.row(rows[i] + offset);
+            }
+            mRows = composed;
+            mRowOffset = 0;
+        }
+    }
+
+    public static MediaIndex empty() {
+        return EMPTY;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * A snapshot of the items at {@code positions[i] + offset}, sharing this snapshot's columns instead of
+     * copying them. Costs nothing but the position table, which is not copied and must not be modified.
+     */
+    public MediaIndex view(int[] positions, int offset) {
+        return new MediaIndex(this, positions, offset);
+    }
+
+    private int row(int position) {
+        return mRows == null ? position : mRows[position] + mRowOffset;
+    }
+
+    public long idAt(int position) {
+        return mIds[row(position)];
+    }
+
+    public long bucketIdAt(int position) {
+        return mBucketIds[row(position)];
+    }
+
+    /**
+     * @return {@code bucket_display_name}, null if not loaded.
+     */
+    public String bucketNameAt(int position) {
+        return mBucketNames[mBucketNameCodes[row(position)]];
+    }
+
+    /**
+     * @return {@code datetaken} in ms, 0 if unknown.
+     */
+    public long dateTakenAt(int position) {
+        return mDates[row(position)];
+    }
+
+    /**
+     * @return {@code date_modified} in seconds, 0 if not loaded.
+     */
+    public long dateModifiedAt(int position) {
+        return mModified[row(position)];
+    }
+
+    public long sizeAt(int position) {
+        return mSizes[row(position)];
+    }
+
+    /**
+     * @return duration in ms, only for video.
+     */
+    public long durationAt(int position) {
+        return mDurations[row(position)];
+    }
+
+    /**
+     * @return the latest {@code date_added} of the items, in seconds; rows added later are newer than that.
+     */
+    public long getMaxDateAdded() {
+        return mMaxDateAdded;
+    }
+
+    /**
+     * @return the latest {@code date_modified} of the items, in seconds.
+     */
+    public long getMaxDateModified() {
+        return mMaxDateModified;
+    }
+
+    public String mimeTypeAt(int position) {
+        return mMimeTypes[mMimeCodes[row(position)]];
+    }
+
+    public boolean isCapture(int position) {
+        return mIds[row(position)] == Item.ITEM_ID_CAPTURE;
+    }
+
+    public boolean isImage(int position) {
+        return (mMimeFlags[mMimeCodes[row(position)]] & FLAG_IMAGE) != 0;
+    }
+
+    public boolean isVideo(int position) {
+        return (mMimeFlags[mMimeCodes[row(position)]] & FLAG_VIDEO) != 0;
+    }
+
+    public boolean isGif(int position) {
+        return (mMimeFlags[mMimeCodes[row(position)]] & FLAG_GIF) != 0;
+    }
+
+    /**
+     * Content uri of the item at {@code position}, created on first use and reused by later binds.
+     * Main thread only.
+     */
+    public Uri uriAt(int position) {
+        if (mUris == null) {
+            mUris = new Uri[mCount];
+        }
+        Uri uri = mUris[position];
+        if (uri == null) {
+            int flags = mMimeFlags[mMimeCodes[row(position)]];
+            uri = ContentUris.withAppendedId(
+                    Item.contentUriOf((flags & FLAG_IMAGE) != 0, (flags & FLAG_VIDEO) != 0), mIds[row(position)]);
+            mUris[position] = uri;
+        }
+        return uri;
+    }
+
+    /**
+     * Materialize the item at {@code position}, for when it leaves the grid (selection, preview).
+     */
+    public Item itemAt(int position) {
+        return new Item(mIds[row(position)], mimeTypeAt(position), mSizes[row(position)], mDurations[row(position)]);
+    }
+
+    /**
+     * @return position of the item with the given id, or -1.
+     */
+    public int indexOf(long id) {
+        for (int i = 0; i < mCount; i++) {
+            if (mIds[row(i)] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether this snapshot starts with every item of {@code previous} at the same position, i.e. it only
+     * appends to it.
+     */
+    public boolean isContinuationOf(MediaIndex previous) {
+        return previous != null && previous != this && previous.mCount > 0
+                && previous.mLineage == mLineage && previous.mCount <= mCount;
+    }
+
+    /**
+     * Whether this snapshot was built from {@code previous} by removing the items at
+     * {@link #getRemovedPositions()} and then inserting the ones at {@link #getInsertedPositions()}.
+     */
+    public boolean isDeltaOf(MediaIndex previous) {
+        return previous != null && mBaseLineage != null
+                && previous.mLineage == mBaseLineage && previous.mCount == mBaseCount;
+    }
+
+    /**
+     * @return ascending positions, in the base snapshot, of the items removed from it.
+     */
+    public int[] getRemovedPositions() {
+        return mRemoved;
+    }
+
+    /**
+     * @return ascending positions, in this snapshot, of the items inserted after the removals.
+     */
+    public int[] getInsertedPositions() {
+        return mInserted;
+    }
+
+    /**
+     * Carry over uris already created by {@code previous} for the positions both snapshots share.
+     * Main thread only.
+     */
+    public void inheritUris(MediaIndex previous) {
+        if (!isContinuationOf(previous) || previous.mUris == null) {
+            return;
+        }
+        mUris = new Uri[mCount];
+        System.arraycopy(previous.mUris, 0, mUris, 0, previous.mCount);
+    }
+
+    /**
+     * Whether both snapshots hold the same items in the same order.
+     */
+    public boolean contentEquals(MediaIndex other) {
+        if (other == this) {
+            return true;
+        }
+        if (other == null || other.mCount != mCount) {
+            return false;
+        }
+        for (int i = 0; i < mCount; i++) {
+            if (idAt(i) != other.idAt(i)
+                    || bucketIdAt(i) != other.bucketIdAt(i)
+                    || dateTakenAt(i) != other.dateTakenAt(i)
+                    || dateModifiedAt(i) != other.dateModifiedAt(i)
+                    || sizeAt(i) != other.sizeAt(i)
+                    || durationAt(i) != other.durationAt(i)
+                    || !equals(mimeTypeAt(i), other.mimeTypeAt(i))
+                    || !equals(bucketNameAt(i), other.bucketNameAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the mime type and bucket name tables and then every column, column after column, so that
+     * {@link #readFrom(ByteBuffer)} can copy each of them in one bulk get.
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(mCount);
+        out.writeLong(mMaxDateAdded);
+        out.writeLong(mMaxDateModified);
+        writeTable(out, mMimeTypes);
+        writeTable(out, mBucketNames);
+        writeColumn(out, mIds);
+        writeColumn(out, mBucketIds);
+        writeColumn(out, mDates);
+        writeColumn(out, mModified);
+        writeColumn(out, mSizes);
+        writeColumn(out, mMimeCodes);
+        writeColumn(out, mDurations);
+        writeColumn(out, mBucketNameCodes);
+    }
+
+    /**
+     * Read a snapshot written by {@link #writeTo(DataOutputStream)}, e.g. from a memory mapped file.
+     *
+     * @throws IllegalArgumentException if the data is truncated or inconsistent.
+     */
+    public static MediaIndex readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        long maxDateAdded = in.getLong();
+        long maxDateModified = in.getLong();
+        // before allocating the columns, a corrupted count must not take the whole heap
+        if (count < 0 || (long) count * BYTES_PER_ITEM > in.remaining()) {
+            throw new IllegalArgumentException("Corrupted media index header");
+        }
+        Builder builder = new Builder(count);
+        builder.mMaxDateAdded = maxDateAdded;
+        builder.mMaxDateModified = maxDateModified;
+        int mimeCount = in.getInt();
+        checkTableSize(in, mimeCount);
+        for (int i = 0; i < mimeCount; i++) {
+            builder.mimeCodeOf(readString(in));
+        }
+        int nameCount = in.getInt();
+        checkTableSize(in, nameCount);
+        for (int i = 0; i < nameCount; i++) {
+            builder.bucketNameCodeOf(readString(in));
+        }
+        if (builder.mMimeTypes.length != mimeCount || builder.mBucketNames.length != nameCount
+                || (long) count * BYTES_PER_ITEM > in.remaining()) {
+            throw new IllegalArgumentException("Corrupted media index");
+        }
+        readColumn(in, builder.mIds, count);
+        readColumn(in, builder.mBucketIds, count);
+        readColumn(in, builder.mDates, count);
+        readColumn(in, builder.mModified, count);
+        readColumn(in, builder.mSizes, count);
+        readColumn(in, builder.mMimeCodes, count);
+        readColumn(in, builder.mDurations, count);
+        readColumn(in, builder.mBucketNameCodes, count);
+        for (int i = 0; i < count; i++) {
+            if (builder.mMimeCodes[i] < 0 || builder.mMimeCodes[i] >= mimeCount
+                    || builder.mBucketNameCodes[i] < 0 || builder.mBucketNameCodes[i] >= nameCount) {
+                throw new IllegalArgumentException("Corrupted media index");
+            }
+        }
+        builder.mCount = count;
+        return builder.build();
+    }
+
+    private static void writeTable(DataOutputStream out, String[] table) throws IOException {
+        out.writeInt(table.length);
+        for (String value : table) {
+            if (value == null) {
+                out.writeInt(-1);
+            } else {
+                byte[] bytes = value.getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static void checkTableSize(ByteBuffer in, int size) {
+        // every entry takes at least its length
+        if (size < 0 || (long) size * 4 > in.remaining()) {
+            throw new IllegalArgumentException("Corrupted media index header");
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.remaining()) {
+            throw new IllegalArgumentException("Corrupted media index");
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private void writeColumn(DataOutputStream out, long[] column) throws IOException {
+        for (int i = 0; i < mCount; i++) {
+            out.writeLong(column[row(i)]);
+        }
+    }
+
+    private void writeColumn(DataOutputStream out, int[] column) throws IOException {
+        for (int i = 0; i < mCount; i++) {
+            out.writeInt(column[row(i)]);
+        }
+    }
+
+    private static void readColumn(ByteBuffer in, long[] column, int count) {
+        in.asLongBuffer().get(column, 0, count);
+        in.position(in.position() + count * 8);
+    }
+
+    private static void readColumn(ByteBuffer in, int[] column, int count) {
+        in.asIntBuffer().get(column, 0, count);
+        in.position(in.position() + count * 4);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Bytes held by the primitive columns, including capacity reserved for items not loaded yet. Uris are only
+     * created for bound positions and are not counted.
+     */
+    public long sizeInBytes() {
+        if (mRows != null) {
+            // the columns belong to the source snapshot
+            return (long) mRows.length * 4;
+        }
+        return (long) mIds.length * BYTES_PER_ITEM;
+    }
+
+    /**
+     * Accumulates rows on a background thread. {@link #build()} may be called any number of times, e.g. once
+     * per page; each call publishes the rows added so far.
+     */
+    public static final class Builder {
+        private static final int DEFAULT_CAPACITY = 256;
+
+        private final Object mLineage = new Object();
+        private final Map<String, Integer> mMimeCodeMap = new HashMap<>();
+        private final Map<String, Integer> mBucketNameCodeMap = new HashMap<>();
+        private int mCount;
+        private long[] mIds;
+        private long[] mBucketIds;
+        private long[] mDates;
+        private long[] mModified;
+        private long[] mSizes;
+        private int[] mMimeCodes;
+        private int[] mDurations;
+        private String[] mMimeTypes = new String[0];
+        private int[] mMimeFlags = new int[0];
+        private int[] mBucketNameCodes;
+        private String[] mBucketNames = new String[0];
+        private long mMaxDateAdded;
+        private long mMaxDateModified;
+        private Object mBaseLineage;
+        private int mBaseCount;
+        private int[] mRemoved;
+        private int[] mInserted;
+
+        public Builder() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        public Builder(int capacity) {
+            mIds = new long[capacity];
+            mBucketIds = new long[capacity];
+            mDates = new long[capacity];
+            mModified = new long[capacity];
+            mSizes = new long[capacity];
+            mMimeCodes = new int[capacity];
+            mDurations = new int[capacity];
+            mBucketNameCodes = new int[capacity];
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public Builder add(long id, long bucketId, long dateTaken, long dateModified, String mimeType, long size,
+                           long duration) {
+            return add(id, bucketId, null, dateTaken, dateModified, mimeType, size, duration);
+        }
+
+        public Builder add(long id, long bucketId, String bucketName, long dateTaken, long dateModified,
+                           String mimeType, long size, long duration) {
+            ensureCapacity(mCount + 1);
+            mIds[mCount] = id;
+            mBucketIds[mCount] = bucketId;
+            mDates[mCount] = dateTaken;
+            mModified[mCount] = dateModified;
+            mSizes[mCount] = size;
+            mMimeCodes[mCount] = mimeCodeOf(mimeType);
+            mDurations[mCount] = (int) duration;
+            mBucketNameCodes[mCount] = bucketNameCodeOf(bucketName);
+            mCount++;
+            return this;
+        }
+
+        /**
+         * Copy the item at {@code position} of {@code index}.
+         */
+        public Builder add(MediaIndex index, int position) {
+            return add(index.idAt(position), index.bucketIdAt(position), index.bucketNameAt(position),
+                    index.dateTakenAt(position), index.dateModifiedAt(position), index.mimeTypeAt(position),
+                    index.sizeAt(position), index.durationAt(position));
+        }
+
+        /**
+         * Record that the snapshot being built is {@code base} with the items at {@code removed} taken out and
+         * then the ones at {@code inserted} put in, these being taken from {@code changes}.
+         */
+        public Builder setDelta(MediaIndex base, MediaIndex changes, int[] removed, int[] inserted) {
+            mBaseLineage = base.mLineage;
+            mBaseCount = base.mCount;
+            mRemoved = removed;
+            mInserted = inserted;
+            mMaxDateAdded = Math.max(base.mMaxDateAdded, changes.mMaxDateAdded);
+            mMaxDateModified = Math.max(base.mMaxDateModified, changes.mMaxDateModified);
+            return this;
+        }
+
+        /**
+         * Add every remaining row of {@code cursor}, which must contain the columns read by
+         * {@link Item#valueOf(Cursor)}; {@code bucket_id}, {@code bucket_display_name}, {@code datetaken},
+         * {@code date_added} and {@code date_modified} are read when present. The cursor is not closed.
+         */
+        public Builder addAll(Cursor cursor) {
+            int idColumn = cursor.getColumnIndex(MediaStore.Files.FileColumns._ID);
+            int bucketIdColumn = cursor.getColumnIndex(MediaStore.Images.Media.BUCKET_ID);
+            int bucketNameColumn = cursor.getColumnIndex(MediaStore.Images.Media.BUCKET_DISPLAY_NAME);
+            int dateColumn = cursor.getColumnIndex(MediaStore.Images.Media.DATE_TAKEN);
+            int mimeTypeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.MIME_TYPE);
+            int sizeColumn = cursor.getColumnIndex(MediaStore.MediaColumns.SIZE);
+            int durationColumn = cursor.getColumnIndex("duration");
+            int dateAddedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED);
+            int dateModifiedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            ensureCapacity(mCount + Math.max(cursor.getCount() - cursor.getPosition() - 1, 0));
+            while (cursor.moveToNext()) {
+                long dateModified = dateModifiedColumn == -1 ? 0 : cursor.getLong(dateModifiedColumn);
+                add(cursor.getLong(idColumn),
+                        bucketIdColumn == -1 ? 0 : cursor.getLong(bucketIdColumn),
+                        bucketNameColumn == -1 ? null : cursor.getString(bucketNameColumn),
+                        dateColumn == -1 ? 0 : cursor.getLong(dateColumn),
+                        dateModified,
+                        cursor.getString(mimeTypeColumn),
+                        cursor.getLong(sizeColumn),
+                        cursor.getLong(durationColumn));
+                if (dateAddedColumn != -1) {
+                    mMaxDateAdded = Math.max(mMaxDateAdded, cursor.getLong(dateAddedColumn));
+                }
+                mMaxDateModified = Math.max(mMaxDateModified, dateModified);
+            }
+            return this;
+        }
+
+        public MediaIndex build() {
+            return new MediaIndex(this);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= mIds.length) {
+                return;
+            }
+            // grow into new arrays, snapshots already built keep the old ones
+            int newCapacity = Math.max(capacity, Math.max(mIds.length * 2, DEFAULT_CAPACITY));
+            mIds = Arrays.copyOf(mIds, newCapacity);
+            mBucketIds = Arrays.copyOf(mBucketIds, newCapacity);
+            mDates = Arrays.copyOf(mDates, newCapacity);
+            mModified = Arrays.copyOf(mModified, newCapacity);
+            mSizes = Arrays.copyOf(mSizes, newCapacity);
+            mMimeCodes = Arrays.copyOf(mMimeCodes, newCapacity);
+            mDurations = Arrays.copyOf(mDurations, newCapacity);
+            mBucketNameCodes = Arrays.copyOf(mBucketNameCodes, newCapacity);
+        }
+
+        private int mimeCodeOf(String mimeType) {
+            Integer code = mMimeCodeMap.get(mimeType);
+            if (code != null) {
+                return code;
+            }
+            // a handful of distinct types per device, copy on write so built snapshots never see a change
+            int newCode = mMimeTypes.length;
+            mMimeTypes = Arrays.copyOf(mMimeTypes, newCode + 1);
+            mMimeFlags = Arrays.copyOf(mMimeFlags, newCode + 1);
+            mMimeTypes[newCode] = mimeType;
+            MimeType type = MimeType.fromMimeTypeName(mimeType);
+            mMimeFlags[newCode] = type == null ? 0
+                    : (type.isImage() ? FLAG_IMAGE : 0)
+                    | (type.isVideo() ? FLAG_VIDEO : 0)
+                    | (type == MimeType.GIF ? FLAG_GIF : 0);
+            mMimeCodeMap.put(mimeType, newCode);
+            return newCode;
+        }
+
+        private int bucketNameCodeOf(String name) {
+            Integer code = mBucketNameCodeMap.get(name);
+            if (code != null) {
+                return code;
+            }
+            // one per album, copy on write like the mime types
+            int newCode = mBucketNames.length;
+            mBucketNames = Arrays.copyOf(mBucketNames, newCode + 1);
+            mBucketNames[newCode] = name;
+            mBucketNameCodeMap.put(name, newCode);
+            return newCode;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.entity;
+
+import com.zhihu.matisse.DateSection;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Date sections of a {@link MediaIndex} in order of date taken, newest first, and the mapping between positions
+ * of the index and positions of a list showing a header before each section. The capture item comes before every
+ * section, and items appended to the index after the sections were computed belong to the last one.
+ * <p>
+ * Where each month starts is kept as well, whatever the period of the sections, for fast scrolling.
+ */
+public final class MediaSections {
+    /**
+     * Key of the section of items without a date taken.
+     */
+    public static final long KEY_UNDATED = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int mCoveredCount;
+    private final int mCount;
+    private final int[] mStarts;
+    // header position of each section in the list, mStarts[i] + i
+    private final int[] mHeaders;
+    private final long[] mKeys;
+    private final int mMonthCount;
+    private final int[] mMonthStarts;
+    private final long[] mMonthKeys;
+
+    private MediaSections(Builder builder) {
+        mCoveredCount = builder.mCoveredCount;
+        mCount = builder.mCount;
+        mStarts = builder.mStarts;
+        mKeys = builder.mKeys;
+        mMonthCount = builder.mMonthCount;
+        mMonthStarts = builder.mMonthStarts;
+        mMonthKeys = builder.mMonthKeys;
+        mHeaders = new int[mCount];
+        for (int i = 0; i < mCount; i++) {
+            mHeaders[i] = mStarts[i] + i;
+        }
+    }
+
+    /**
+     * Split {@code index}, which must be in order of date taken.
+     *
+     * @param previous sections of an index that {@code index} {@link MediaIndex#isContinuationOf(MediaIndex)
+     *                 continues}, only the items appended since are read; or null.
+     */
+    public static MediaSections compute(MediaIndex index, DateSection period, MediaSections previous) {
+        Builder builder = new Builder(previous);
+        Calendar calendar = Calendar.getInstance();
+        // the items of a day are usually next to each other, look the calendar up once per day
+        long dayStart = 0;
+        long dayEnd = 0;
+        long dayKey = KEY_UNDATED;
+        long monthKey = KEY_UNDATED;
+        for (int i = builder.mCoveredCount; i < index.getCount(); i++) {
+            if (index.isCapture(i)) {
+                continue;
+            }
+            long time = index.dateTakenAt(i);
+            if (time <= 0) {
+                dayKey = KEY_UNDATED;
+                monthKey = KEY_UNDATED;
+                dayStart = 0;
+                dayEnd = 0;
+            } else if (time < dayStart || time >= dayEnd) {
+                calendar.setTimeInMillis(time);
+                int year = calendar.get(Calendar.YEAR);
+                int month = calendar.get(Calendar.MONTH) + 1;
+                monthKey = year * 100L + month;
+                dayKey = monthKey * 100L + calendar.get(Calendar.DAY_OF_MONTH);
+                calendar.set(Calendar.HOUR_OF_DAY, 0);
+                calendar.set(Calendar.MINUTE, 0);
+                calendar.set(Calendar.SECOND, 0);
+                calendar.set(Calendar.MILLISECOND, 0);
+                dayStart = calendar.getTimeInMillis();
+                calendar.add(Calendar.DAY_OF_MONTH, 1);
+                dayEnd = calendar.getTimeInMillis();
+            }
+            builder.add(i, period == DateSection.DAY ? dayKey : monthKey, monthKey);
+        }
+        builder.mCoveredCount = index.getCount();
+        return new MediaSections(builder);
+    }
+
+    /**
+     * @return number of items of the index the sections were computed from.
+     */
+    public int getCoveredCount() {
+        return mCoveredCount;
+    }
+
+    public int getSectionCount() {
+        return mCount;
+    }
+
+    /**
+     * @return position in the index of the first item of the section.
+     */
+    public int getStart(int section) {
+        return mStarts[section];
+    }
+
+    /**
+     * @return {@code yyyyMMdd} or {@code yyyyMM} in local time, or {@link #KEY_UNDATED}.
+     */
+    public long getKey(int section) {
+        return mKeys[section];
+    }
+
+    public int getMonthCount() {
+        return mMonthCount;
+    }
+
+    /**
+     * @return position in the index of the first item of the month.
+     */
+    public int getMonthStart(int month) {
+        return mMonthStarts[month];
+    }
+
+    /**
+     * @return {@code yyyyMM} in local time, or {@link #KEY_UNDATED}.
+     */
+    public long getMonthKey(int month) {
+        return mMonthKeys[month];
+    }
+
+    /**
+     * @return month of the item at {@code position} of the index, or -1 for the capture item.
+     */
+    public int monthOf(int position) {
+        return floor(mMonthStarts, mMonthCount, position);
+    }
+
+    /**
+     * @return size of a list of {@code indexCount} items with the headers.
+     */
+    public int getListCount(int indexCount) {
+        return indexCount + mCount;
+    }
+
+    /**
+     * @return section whose header is at {@code listPosition}, or -1 if an item is there.
+     */
+    public int sectionAt(int listPosition) {
+        int section = floor(mHeaders, mCount, listPosition);
+        return section != -1 && mHeaders[section] == listPosition ? section : -1;
+    }
+
+    /**
+     * @return position in the index of the item at {@code listPosition}, or -1 if a header is there.
+     */
+    public int indexPositionOf(int listPosition) {
+        int section = floor(mHeaders, mCount, listPosition);
+        if (section == -1) {
+            return listPosition;
+        }
+        return mHeaders[section] == listPosition ? -1 : listPosition - section - 1;
+    }
+
+    public int listPositionOf(int indexPosition) {
+        return indexPosition + floor(mStarts, mCount, indexPosition) + 1;
+    }
+
+    public int headerPositionOf(int section) {
+        return mHeaders[section];
+    }
+
+    /**
+     * @return column of the item at {@code listPosition} in a grid of {@code spanCount} where each header takes
+     * a whole row.
+     */
+    public int spanIndexOf(int listPosition, int spanCount) {
+        int section = floor(mHeaders, mCount, listPosition);
+        if (section == -1) {
+            return listPosition % spanCount;
+        }
+        return mHeaders[section] == listPosition ? 0 : (listPosition - mHeaders[section] - 1) % spanCount;
+    }
+
+    /**
+     * @return the last of the first {@code count} ascending {@code values} not greater than {@code value}, or -1.
+     */
+    private static int floor(int[] values, int count, int value) {
+        int found = Arrays.binarySearch(values, 0, count, value);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private static final class Builder {
+        private int mCoveredCount;
+        private int mCount;
+        private int[] mStarts;
+        private long[] mKeys;
+        private int mMonthCount;
+        private int[] mMonthStarts;
+        private long[] mMonthKeys;
+
+        Builder(MediaSections previous) {
+            if (previous == null) {
+                mStarts = new int[INITIAL_CAPACITY];
+                mKeys = new long[INITIAL_CAPACITY];
+                mMonthStarts = new int[INITIAL_CAPACITY];
+                mMonthKeys = new long[INITIAL_CAPACITY];
+                return;
+            }
+            // previous sections are shared, copy before appending
+            mCoveredCount = previous.mCoveredCount;
+            mCount = previous.mCount;
+            mStarts = Arrays.copyOf(previous.mStarts, previous.mStarts.length);
+            mKeys = Arrays.copyOf(previous.mKeys, previous.mKeys.length);
+            mMonthCount = previous.mMonthCount;
+            mMonthStarts = Arrays.copyOf(previous.mMonthStarts, previous.mMonthStarts.length);
+            mMonthKeys = Arrays.copyOf(previous.mMonthKeys, previous.mMonthKeys.length);
+        }
+
+        void add(int position, long key, long monthKey) {
+            if (mCount == 0 || mKeys[mCount - 1] != key) {
+                if (mCount == mStarts.length) {
+                    mStarts = Arrays.copyOf(mStarts, mCount * 2);
+                    mKeys = Arrays.copyOf(mKeys, mCount * 2);
+                }
+                mStarts[mCount] = position;
+                mKeys[mCount++] = key;
+            }
+            if (mMonthCount == 0 || mMonthKeys[mMonthCount - 1] != monthKey) {
+                if (mMonthCount == mMonthStarts.length) {
+                    mMonthStarts = Arrays.copyOf(mMonthStarts, mMonthCount * 2);
+                    mMonthKeys = Arrays.copyOf(mMonthKeys, mMonthCount * 2);
+                }
+                mMonthStarts[mMonthCount] = position;
+                mMonthKeys[mMonthCount++] = monthKey;
+            }
+        }
+    }
+}
@@ -17,16 +17,20 @@
 package com.zhihu.matisse.internal.entity;
 
 import android.content.pm.ActivityInfo;
+import android.os.AsyncTask;
 import android.support.annotation.StyleRes;
 
+import com.zhihu.matisse.DateSection;
 import com.zhihu.matisse.MimeType;
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.engine.impl.PicassoEngine;
 import com.zhihu.matisse.filter.Filter;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 public final class SelectionSpec {
 
@@ -46,6 +50,24 @@ public final class SelectionSpec {
     public int gridExpectedSize;
     public float thumbnailScale;
     public ImageEngine imageEngine;
+    public int pageSize;
+    public long minSize;
+    public long maxSize;
+    public long minDuration;
+    public long maxDuration;
+    public int minWidth;
+    public int minHeight;
+    public int maxWidth;
+    public int maxHeight;
+    public Set<MimeType> shownMimeTypes;
+    // first one is shown on launch
+    public SortOrder[] sortOrders;
+    public boolean searchEnabled;
+    public DateSection dateSection;
+    // media store and file reads, image decoding, and in-memory work such as sorting
+    public Executor ioExecutor;
+    public Executor decodeExecutor;
+    public Executor cpuExecutor;
 
     private SelectionSpec() {
     }
@@ -76,12 +98,32 @@ public final class SelectionSpec {
         gridExpectedSize = 0;
         thumbnailScale = 0.5f;
         imageEngine = new PicassoEngine();
+        pageSize = 0;
+        minSize = 0;
+        maxSize = Long.MAX_VALUE;
+        minDuration = 0;
+        maxDuration = Long.MAX_VALUE;
+        minWidth = 0;
+        minHeight = 0;
+        maxWidth = Integer.MAX_VALUE;
+        maxHeight = Integer.MAX_VALUE;
+        shownMimeTypes = null;
+        sortOrders = new SortOrder[]{SortOrder.DATE_TAKEN};
+        searchEnabled = false;
+        dateSection = null;
+        ioExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+        decodeExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
+        cpuExecutor = AsyncTask.THREAD_POOL_EXECUTOR;
     }
 
     public boolean singleSelectionModeEnabled() {
         return (maxSelectable == 1 || (maxImageSelectable == 1 && maxVideoSelectable == 1));
     }
 
+    public boolean pagedLoadingEnabled() {
+        return pageSize > 0;
+    }
+
     public boolean needOrientationRestriction() {
         return orientation != ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED;
     }
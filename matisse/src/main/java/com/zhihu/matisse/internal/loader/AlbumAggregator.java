@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Group the "All" media into albums in a single pass. Items come newest first: the first item of a bucket is its
+ * cover, and each bucket keeps the positions of its items in that order.
+ * Once complete, an aggregator is only read and may be shared between threads.
+ */
+public final class AlbumAggregator {
+    private static final int INITIAL_BUCKETS = 16;
+    private static final int INITIAL_MEMBERS = 8;
+
+    private final LongIntHashMap mBucketSlots = new LongIntHashMap(-1, INITIAL_BUCKETS);
+    private long[] mBucketIds = new long[INITIAL_BUCKETS];
+    private String[] mNames = new String[INITIAL_BUCKETS];
+    private long[] mCoverIds = new long[INITIAL_BUCKETS];
+    private String[] mCoverMimeTypes = new String[INITIAL_BUCKETS];
+    private int[][] mMembers = new int[INITIAL_BUCKETS][];
+    private int[] mCounts = new int[INITIAL_BUCKETS];
+    private int mBucketCount;
+    private int mTotalCount;
+
+    /**
+     * Add every item of the "All" media loaded by {@link MediaLoader}, skipping the capture item, so that positions
+     * count media items only.
+     */
+    public void addAll(MediaIndex index) {
+        for (int i = 0; i < index.getCount(); i++) {
+            if (index.isCapture(i)) {
+                continue;
+            }
+            long bucketId = index.bucketIdAt(i);
+            int bucket = mBucketSlots.get(bucketId);
+            if (bucket == -1) {
+                bucket = addBucket(bucketId, index.bucketNameAt(i), index.idAt(i), index.mimeTypeAt(i));
+            }
+            addMember(bucket, mTotalCount++);
+        }
+        // release what the doubling reserved, the lists are kept as long as the album list
+        for (int i = 0; i < mBucketCount; i++) {
+            if (mMembers[i].length != mCounts[i]) {
+                mMembers[i] = Arrays.copyOf(mMembers[i], mCounts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return number of rows added, i.e. the size of the "All" album.
+     */
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    public int getBucketCount() {
+        return mBucketCount;
+    }
+
+    /**
+     * @return index of the bucket, in order of their newest item, or -1.
+     */
+    public int indexOfBucket(long bucketId) {
+        return mBucketSlots.get(bucketId);
+    }
+
+    public long getBucketId(int bucket) {
+        return mBucketIds[bucket];
+    }
+
+    public String getDisplayName(int bucket) {
+        return mNames[bucket];
+    }
+
+    public int getCount(int bucket) {
+        return mCounts[bucket];
+    }
+
+    /**
+     * @return id of the newest item of the bucket.
+     */
+    public long getCoverId(int bucket) {
+        return mCoverIds[bucket];
+    }
+
+    public String getCoverMimeType(int bucket) {
+        return mCoverMimeTypes[bucket];
+    }
+
+    /**
+     * @return ascending positions of the bucket's items among all rows added. Do not modify.
+     */
+    public int[] getMembers(int bucket) {
+        return mMembers[bucket];
+    }
+
+    private int addBucket(long bucketId, String name, long coverId, String coverMimeType) {
+        if (mBucketCount == mBucketIds.length) {
+            int capacity = mBucketCount * 2;
+            mBucketIds = Arrays.copyOf(mBucketIds, capacity);
+            mNames = Arrays.copyOf(mNames, capacity);
+            mCoverIds = Arrays.copyOf(mCoverIds, capacity);
+            mCoverMimeTypes = Arrays.copyOf(mCoverMimeTypes, capacity);
+            mMembers = Arrays.copyOf(mMembers, capacity);
+            mCounts = Arrays.copyOf(mCounts, capacity);
+        }
+        int bucket = mBucketCount++;
+        mBucketIds[bucket] = bucketId;
+        mNames[bucket] = name;
+        mCoverIds[bucket] = coverId;
+        mCoverMimeTypes[bucket] = coverMimeType;
+        mMembers[bucket] = new int[INITIAL_MEMBERS];
+        mBucketSlots.put(bucketId, bucket);
+        return bucket;
+    }
+
+    private void addMember(int bucket, int position) {
+        int[] members = mMembers[bucket];
+        int count = mCounts[bucket];
+        if (count == members.length) {
+            members = Arrays.copyOf(members, count * 2);
+            mMembers[bucket] = members;
+        }
+        members[count] = position;
+        mCounts[bucket] = count + 1;
+    }
+}
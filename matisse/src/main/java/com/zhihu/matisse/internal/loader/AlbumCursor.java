@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.database.MatrixCursor;
+
+/**
+ * Album rows produced by {@link AlbumLoader}, along with the {@link AlbumAggregator} they were built from so
+ * that the members of each album are known without another query.
+ */
+public class AlbumCursor extends MatrixCursor {
+    private final AlbumAggregator mAggregator;
+
+    AlbumCursor(String[] columnNames, AlbumAggregator aggregator) {
+        super(columnNames, aggregator.getBucketCount() + 1);
+        mAggregator = aggregator;
+    }
+
+    public AlbumAggregator getAggregator() {
+        return mAggregator;
+    }
+}
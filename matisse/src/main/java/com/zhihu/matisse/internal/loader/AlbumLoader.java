@@ -18,103 +18,152 @@ package com.zhihu.matisse.internal.loader;
 
 import android.content.Context;
 import android.database.Cursor;
-import android.database.MatrixCursor;
-import android.database.MergeCursor;
 import android.net.Uri;
 import android.provider.MediaStore;
-import android.support.v4.content.CursorLoader;
+import android.support.v4.content.Loader;
 
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 
 /**
- * Load all albums (grouped by bucket_id) into a single cursor.
+ * Load all albums into a single cursor. Albums are aggregated from the "All" media loaded by {@link MediaLoader}
+ * rather than a {@code GROUP BY}, which the media store does not officially support in a selection, and the
+ * picker's own load of that album shares its query.
  */
-public class AlbumLoader extends CursorLoader {
+public class AlbumLoader extends ExecutorLoader<Cursor> {
     public static final String COLUMN_COUNT = "count";
-    private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
+    public static final String COLUMN_COVER_ID = "cover_id";
+    public static final String COLUMN_COVER_MIME_TYPE = "cover_mime_type";
+    private static final Uri QUERY_URI = MediaLoader.QUERY_URI;
     private static final String[] COLUMNS = {
             MediaStore.Files.FileColumns._ID,
             "bucket_id",
             "bucket_display_name",
-            MediaStore.MediaColumns.DATA,
+            COLUMN_COVER_ID,
+            COLUMN_COVER_MIME_TYPE,
             COLUMN_COUNT};
-    private static final String[] PROJECTION = {
-            MediaStore.Files.FileColumns._ID,
-            "bucket_id",
-            "bucket_display_name",
-            MediaStore.MediaColumns.DATA,
-            "COUNT(*) AS " + COLUMN_COUNT};
-
-    // === params for showSingleMediaType: false ===
-    private static final String SELECTION =
-            "(" + MediaStore.Files.FileColumns.MEDIA_TYPE + "=?"
-                    + " OR "
-                    + MediaStore.Files.FileColumns.MEDIA_TYPE + "=?)"
-                    + " AND " + MediaStore.MediaColumns.SIZE + ">0"
-                    + ") GROUP BY (bucket_id";
-    private static final String[] SELECTION_ARGS = {
-            String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE),
-            String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO),
-    };
-    // =============================================
-
-    // === params for showSingleMediaType: true ===
-    private static final String SELECTION_FOR_SINGLE_MEDIA_TYPE =
-            MediaStore.Files.FileColumns.MEDIA_TYPE + "=?"
-                    + " AND " + MediaStore.MediaColumns.SIZE + ">0"
-                    + ") GROUP BY (bucket_id";
-
-    private static String[] getSelectionArgsForSingleMediaType(int mediaType) {
-        return new String[]{String.valueOf(mediaType)};
-    }
-    // =============================================
 
-    private static final String BUCKET_ORDER_BY = "datetaken DESC";
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private final MediaLoader mMedia;
+    private final long mSignature;
+    private Cursor mCursor;
+    private boolean mStoreChecked;
+    private volatile boolean mVerifyPending;
 
     private AlbumLoader(Context context, String selection, String[] selectionArgs) {
-        super(context, QUERY_URI, PROJECTION, selection, selectionArgs, BUCKET_ORDER_BY);
+        super(context);
+        mMedia = MediaLoader.newInstance(context, Album.all(), SelectionSpec.getInstance().capture);
+        mSignature = MediaIndexStore.signatureOf(selection, selectionArgs, MediaLoader.ORDER_BY, false);
     }
 
-    public static CursorLoader newInstance(Context context) {
-        String selection;
-        String[] selectionArgs;
-        if (SelectionSpec.getInstance().onlyShowImages()) {
-            selection = SELECTION_FOR_SINGLE_MEDIA_TYPE;
-            selectionArgs = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
-        } else if (SelectionSpec.getInstance().onlyShowVideos()) {
-            selection = SELECTION_FOR_SINGLE_MEDIA_TYPE;
-            selectionArgs = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
-        } else {
-            selection = SELECTION;
-            selectionArgs = SELECTION_ARGS;
-        }
-        return new AlbumLoader(context, selection, selectionArgs);
+    public static Loader<Cursor> newInstance(Context context) {
+        return new AlbumLoader(context, MediaLoader.selectionOfAll(), MediaLoader.selectionArgsOfAll());
     }
 
     @Override
     public Cursor loadInBackground() {
-        Cursor albums = super.loadInBackground();
-        MatrixCursor allAlbum = new MatrixCursor(COLUMNS);
-        int totalCount = 0;
-        String allAlbumCoverPath = "";
-        if (albums != null) {
-            while (albums.moveToNext()) {
-                totalCount += albums.getInt(albums.getColumnIndex(COLUMN_COUNT));
+        int generation = MediaSnapshotCache.getGeneration(getContext());
+        if (!mStoreChecked) {
+            mStoreChecked = true;
+            AlbumAggregator retained = MediaSnapshotCache.getFreshAlbums(mSignature);
+            if (retained != null) {
+                // loaded by an earlier launch or a prewarm, and nothing changed since
+                return toCursor(retained);
+            }
+            Cursor stored = MediaIndexStore.readAlbums(getContext(), mSignature, COLUMNS);
+            if (stored != null) {
+                // show the albums of last time, then check them against the media store
+                mVerifyPending = true;
+                return stored;
             }
-            if (albums.moveToFirst()) {
-                allAlbumCoverPath = albums.getString(albums.getColumnIndex(MediaStore.MediaColumns.DATA));
+        }
+
+        AlbumAggregator aggregator = new AlbumAggregator();
+        aggregator.addAll(mMedia.loadCurrent());
+        MediaSnapshotCache.putAlbums(mSignature, aggregator, generation);
+
+        Cursor result = toCursor(aggregator);
+        MediaIndexStore.writeAlbums(getContext(), mSignature, result);
+        return result;
+    }
+
+    /**
+     * Load the current albums right away, skipping the stored copy. For use outside a
+     * {@link android.support.v4.app.LoaderManager}.
+     */
+    void loadCurrent() {
+        mStoreChecked = true;
+        loadInBackground().close();
+    }
+
+    private Cursor toCursor(AlbumAggregator aggregator) {
+        AlbumCursor result = new AlbumCursor(COLUMNS, aggregator);
+        // the newest item of all is the cover of the first bucket
+        boolean empty = aggregator.getBucketCount() == 0;
+        result.addRow(new Object[]{Album.ALBUM_ID_ALL, Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL,
+                empty ? 0 : aggregator.getCoverId(0), empty ? null : aggregator.getCoverMimeType(0),
+                aggregator.getTotalCount()});
+        for (int i = 0; i < aggregator.getBucketCount(); i++) {
+            result.addRow(new Object[]{aggregator.getCoverId(i), String.valueOf(aggregator.getBucketId(i)),
+                    aggregator.getDisplayName(i), aggregator.getCoverId(i), aggregator.getCoverMimeType(i),
+                    aggregator.getCount(i)});
+        }
+        result.setNotificationUri(getContext().getContentResolver(), QUERY_URI);
+        result.registerContentObserver(mObserver);
+        return result;
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        if (isReset()) {
+            if (cursor != null) {
+                cursor.close();
             }
+            return;
+        }
+        Cursor old = mCursor;
+        mCursor = cursor;
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+        if (old != null && old != cursor && !old.isClosed()) {
+            old.close();
+        }
+        if (mVerifyPending && isStarted()) {
+            mVerifyPending = false;
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mCursor != null) {
+            deliverResult(mCursor);
         }
-        allAlbum.addRow(new String[]{Album.ALBUM_ID_ALL, Album.ALBUM_ID_ALL, Album.ALBUM_NAME_ALL, allAlbumCoverPath,
-                String.valueOf(totalCount)});
+        if (takeContentChanged() || mCursor == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
 
-        return new MergeCursor(new Cursor[]{allAlbum, albums});
+    @Override
+    public void onCanceled(Cursor cursor) {
+        if (cursor != null && !cursor.isClosed()) {
+            cursor.close();
+        }
     }
 
     @Override
-    public void onContentChanged() {
-        // FIXME a dirty way to fix loading multiple times
-        super.onContentChanged();
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mCursor != null && !mCursor.isClosed()) {
+            mCursor.close();
+        }
+        mCursor = null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.Loader;
+
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Loader running {@link #loadInBackground()} on the I/O executor of the {@link SelectionSpec}, where
+ * {@link android.support.v4.content.AsyncTaskLoader} always uses the AsyncTask pool. Like it, at most one load runs
+ * at a time: a load requested while a cancelled one is still running starts once that one returns.
+ */
+public abstract class ExecutorLoader<D> extends Loader<D> {
+    private final Executor mExecutor;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // main thread only: the requested load, and a cancelled one still running
+    private LoadTask mTask;
+    private LoadTask mCancellingTask;
+
+    ExecutorLoader(Context context) {
+        super(context);
+        mExecutor = SelectionSpec.getInstance().ioExecutor;
+    }
+
+    /**
+     * Called on the executor to load the data; may also be called directly on any background thread.
+     */
+    public abstract D loadInBackground();
+
+    /**
+     * Called on the main thread with the result of a load that was cancelled, to release it.
+     */
+    public void onCanceled(D data) {
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        cancelLoad();
+        mTask = new LoadTask();
+        executePendingTask();
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        LoadTask task = mTask;
+        if (task == null) {
+            return false;
+        }
+        mTask = null;
+        if (!task.mSubmitted) {
+            // waiting for the cancelled one, never started
+            return false;
+        }
+        task.mCancelled = true;
+        mCancellingTask = task;
+        return true;
+    }
+
+    private void executePendingTask() {
+        if (mCancellingTask == null && mTask != null && !mTask.mSubmitted) {
+            mTask.mSubmitted = true;
+            mExecutor.execute(mTask);
+        }
+    }
+
+    private void dispatchResult(LoadTask task, D data) {
+        if (task == mTask) {
+            mTask = null;
+            if (isAbandoned() || isReset()) {
+                onCanceled(data);
+            } else {
+                commitContentChanged();
+                deliverResult(data);
+            }
+        } else {
+            if (task == mCancellingTask) {
+                mCancellingTask = null;
+                rollbackContentChanged();
+                executePendingTask();
+            }
+            onCanceled(data);
+        }
+    }
+
+    private final class LoadTask implements Runnable {
+        private boolean mSubmitted;
+        private volatile boolean mCancelled;
+
+        @Override
+        public void run() {
+            final D data = mCancelled ? null : loadInBackground();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchResult(LoadTask.this, data);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.MimeType;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Translate the declarative constraints of a {@link SelectionSpec} (size, duration, dimension and MIME type) into
+ * a clause appended to the media selection, so that rows outside them are never loaded or counted. Without
+ * {@link SelectionSpec#shownMimeTypes}, only the selectable {@link SelectionSpec#mimeTypeSet} is shown.
+ */
+final class MediaConstraints {
+    private static final String COLUMN_DURATION = "duration";
+
+    private MediaConstraints() {
+    }
+
+    /**
+     * @return the clause, starting with {@code " AND "}, or an empty string if nothing is constrained.
+     */
+    static String selectionOf(SelectionSpec spec) {
+        StringBuilder selection = new StringBuilder();
+        build(spec, selection, null);
+        return selection.toString();
+    }
+
+    /**
+     * @return the arguments of the clause returned by {@link #selectionOf(SelectionSpec)}.
+     */
+    static String[] argsOf(SelectionSpec spec) {
+        List<String> args = new ArrayList<>();
+        build(spec, new StringBuilder(), args);
+        return args.toArray(new String[args.size()]);
+    }
+
+    private static void build(SelectionSpec spec, StringBuilder selection, List<String> args) {
+        range(selection, args, MediaStore.MediaColumns.SIZE, spec.minSize, spec.maxSize, Long.MAX_VALUE, false);
+        // images have no duration, and media of unknown duration or dimensions are left to the filters
+        range(selection, args, COLUMN_DURATION, spec.minDuration, spec.maxDuration, Long.MAX_VALUE, true);
+        range(selection, args, MediaStore.MediaColumns.WIDTH, spec.minWidth, spec.maxWidth, Integer.MAX_VALUE,
+                true);
+        range(selection, args, MediaStore.MediaColumns.HEIGHT, spec.minHeight, spec.maxHeight, Integer.MAX_VALUE,
+                true);
+        Set<MimeType> shown = spec.shownMimeTypes != null ? spec.shownMimeTypes : spec.mimeTypeSet;
+        if (shown != null && !shown.containsAll(MimeType.ofAll())) {
+            selection.append(" AND ").append(MediaStore.MediaColumns.MIME_TYPE).append(" IN (");
+            boolean first = true;
+            for (MimeType type : shown) {
+                for (String name : type.getMimeTypeNames()) {
+                    selection.append(first ? "?" : ",?");
+                    add(args, name);
+                    first = false;
+                }
+            }
+            selection.append(')');
+        }
+    }
+
+    private static void range(StringBuilder selection, List<String> args, String column, long min, long max,
+                              long unbounded, boolean unknownPasses) {
+        if (min <= 0 && max >= unbounded) {
+            return;
+        }
+        selection.append(" AND (");
+        if (unknownPasses) {
+            selection.append(column).append(" IS NULL OR ").append(column).append("=0 OR (");
+        }
+        selection.append(column).append(">=? AND ").append(column).append("<=?");
+        if (unknownPasses) {
+            selection.append(')');
+        }
+        selection.append(')');
+        add(args, String.valueOf(min));
+        add(args, String.valueOf(max));
+    }
+
+    private static void add(List<String> args, String arg) {
+        if (args != null) {
+            args.add(arg);
+        }
+    }
+}
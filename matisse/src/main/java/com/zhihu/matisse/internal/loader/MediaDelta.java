@@ -0,0 +1,130 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+import java.util.Arrays;
+
+/**
+ * Apply the rows changed since a snapshot, and the deletions found by an id scan, to that snapshot. Both
+ * snapshots are ordered by ({@code datetaken}, {@code _id}) descending, the order of {@link MediaLoader}.
+ */
+final class MediaDelta {
+    /**
+     * Past this many changed rows a full query is cheaper than merging them one by one.
+     */
+    static final int MAX_CHANGED_ROWS = 512;
+
+    private MediaDelta() {
+    }
+
+    /**
+     * @param base       the snapshot being shown, its capture item (if any) is kept in front.
+     * @param changes    rows added or modified since {@code base} was loaded.
+     * @param presentIds ascending ids of every row the query currently matches.
+     * @return {@code base} if nothing changed, a snapshot recording the removed and inserted positions, or
+     * null if the inputs disagree with each other and a full query is needed.
+     */
+    static MediaIndex reconcile(MediaIndex base, MediaIndex changes, long[] presentIds) {
+        int baseCount = base.getCount();
+        int changeCount = changes.getCount();
+        if (changeCount > MAX_CHANGED_ROWS) {
+            return null;
+        }
+        long[] changedIds = new long[changeCount];
+        for (int j = 0; j < changeCount; j++) {
+            changedIds[j] = changes.idAt(j);
+        }
+        Arrays.sort(changedIds);
+
+        // rows reported as modified but identical to what is shown, e.g. modified within the last second
+        boolean[] unchanged = new boolean[changeCount];
+        int[] removed = new int[baseCount];
+        int removedCount = 0;
+        int start = baseCount > 0 && base.isCapture(0) ? 1 : 0;
+        for (int i = start; i < baseCount; i++) {
+            long id = base.idAt(i);
+            if (Arrays.binarySearch(presentIds, id) < 0) {
+                removed[removedCount++] = i;
+            } else if (Arrays.binarySearch(changedIds, id) >= 0) {
+                int j = changes.indexOf(id);
+                if (sameItem(base, i, changes, j)) {
+                    unchanged[j] = true;
+                } else {
+                    removed[removedCount++] = i;
+                }
+            }
+        }
+
+        MediaIndex.Builder builder = new MediaIndex.Builder(baseCount + changeCount);
+        int[] inserted = new int[changeCount];
+        int insertedCount = 0;
+        if (start == 1) {
+            builder.add(base, 0);
+        }
+        int i = start;
+        int r = 0;
+        int j = 0;
+        while (true) {
+            while (r < removedCount && removed[r] == i) {
+                r++;
+                i++;
+            }
+            while (j < changeCount && unchanged[j]) {
+                j++;
+            }
+            boolean hasBase = i < baseCount;
+            boolean hasChange = j < changeCount;
+            if (!hasBase && !hasChange) {
+                break;
+            }
+            if (hasChange && (!hasBase || precedes(changes, j, base, i))) {
+                inserted[insertedCount++] = builder.getCount();
+                builder.add(changes, j++);
+            } else {
+                builder.add(base, i++);
+            }
+        }
+
+        if (builder.getCount() - start != presentIds.length) {
+            // a row changed without bumping its dates, or between the two queries
+            return null;
+        }
+        if (removedCount == 0 && insertedCount == 0) {
+            return base;
+        }
+        return builder.setDelta(base, changes, Arrays.copyOf(removed, removedCount),
+                Arrays.copyOf(inserted, insertedCount)).build();
+    }
+
+    private static boolean precedes(MediaIndex a, int i, MediaIndex b, int j) {
+        long dateA = a.dateTakenAt(i);
+        long dateB = b.dateTakenAt(j);
+        return dateA > dateB || (dateA == dateB && a.idAt(i) > b.idAt(j));
+    }
+
+    private static boolean sameItem(MediaIndex a, int i, MediaIndex b, int j) {
+        String mimeType = a.mimeTypeAt(i);
+        return a.idAt(i) == b.idAt(j)
+                && a.bucketIdAt(i) == b.bucketIdAt(j)
+                && a.dateTakenAt(i) == b.dateTakenAt(j)
+                && a.dateModifiedAt(i) == b.dateModifiedAt(j)
+                && a.sizeAt(i) == b.sizeAt(j)
+                && a.durationAt(i) == b.durationAt(j)
+                && (mimeType == null ? b.mimeTypeAt(j) == null : mimeType.equals(b.mimeTypeAt(j)));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+/**
+ * Base for loaders that copy the media store into a {@link MediaIndex} in the background. Cursors never leave
+ * {@link #loadInBackground()}, so instead of observing a cursor the loader watches the media store directly.
+ */
+public abstract class MediaIndexLoader extends ExecutorLoader<MediaIndex> {
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private MediaIndex mIndex;
+    private boolean mObserving;
+
+    MediaIndexLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public void deliverResult(MediaIndex index) {
+        if (isReset()) {
+            return;
+        }
+        mIndex = index;
+        if (isStarted()) {
+            super.deliverResult(index);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(MediaLoader.QUERY_URI, true, mObserver);
+            mObserving = true;
+        }
+        if (mIndex != null) {
+            deliverResult(mIndex);
+        }
+        if (takeContentChanged() || mIndex == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+        mIndex = null;
+    }
+
+    /**
+     * @return the last delivered index, or null.
+     */
+    MediaIndex getIndex() {
+        return mIndex;
+    }
+}
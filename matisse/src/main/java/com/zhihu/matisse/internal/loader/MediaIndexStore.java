@@ -0,0 +1,279 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.support.annotation.WorkerThread;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * App-private copy of the last media and album query results, so that the picker can render them right away on
+ * the next launch while the loaders check them against the media store.
+ * <p>
+ * Each file starts with a header holding a signature of the query that produced it; a file written for other
+ * selection arguments (e.g. images only) or by another format version is ignored. Files are read through a
+ * memory mapped buffer and written to a temporary file of their own first, so neither a reader nor another writer
+ * ever sees a partial write.
+ */
+@WorkerThread
+final class MediaIndexStore {
+    private static final String DIRECTORY = "matisse";
+    private static final String FILE_MEDIA = "media.idx";
+    private static final String FILE_ALBUMS = "albums.idx";
+    private static final int MAGIC = 0x4d545849; // "MTXI"
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private MediaIndexStore() {
+    }
+
+    /**
+     * Signature of a query, stored in the header of the files it produces.
+     */
+    static long signatureOf(String selection, String[] selectionArgs, String sortOrder, boolean capture) {
+        long hash = 1125899906842597L;
+        hash = hash(hash, selection);
+        for (String arg : selectionArgs) {
+            hash = hash(hash, arg);
+        }
+        hash = hash(hash, sortOrder);
+        return 31 * hash + (capture ? 1 : 0);
+    }
+
+    /**
+     * @return the stored media of the "All" album, or null if there is none for this signature.
+     */
+    static MediaIndex readMedia(Context context, long signature) {
+        ByteBuffer buffer = map(file(context, FILE_MEDIA), signature);
+        return buffer == null ? null : readMedia(buffer);
+    }
+
+    /**
+     * @param buffer positioned after the header.
+     * @return null if truncated or corrupted.
+     */
+    static MediaIndex readMedia(ByteBuffer buffer) {
+        try {
+            return MediaIndex.readFrom(buffer);
+        } catch (RuntimeException e) {
+            // truncated or corrupted, will be overwritten by the next query
+            return null;
+        }
+    }
+
+    static void writeMedia(Context context, long signature, MediaIndex index) {
+        File file = file(context, FILE_MEDIA);
+        File temporary = temporary(file);
+        DataOutputStream out = open(temporary, signature);
+        if (out == null) {
+            return;
+        }
+        try {
+            index.writeTo(out);
+            commit(out, temporary, file);
+        } catch (IOException e) {
+            abort(out, temporary);
+        }
+    }
+
+    /**
+     * @return the stored album list as a cursor with the given columns, or null if there is none for this
+     * signature.
+     */
+    static Cursor readAlbums(Context context, long signature, String[] columns) {
+        ByteBuffer buffer = map(file(context, FILE_ALBUMS), signature);
+        return buffer == null ? null : readAlbums(buffer, columns);
+    }
+
+    /**
+     * @param buffer positioned after the header.
+     * @return null if truncated, corrupted or stored with other columns.
+     */
+    static Cursor readAlbums(ByteBuffer buffer, String[] columns) {
+        try {
+            int rows = buffer.getInt();
+            // every value takes at least its length, checked before the cursor reserves the rows
+            if (buffer.getInt() != columns.length || rows < 0
+                    || (long) rows * columns.length * 4 > buffer.remaining()) {
+                return null;
+            }
+            MatrixCursor cursor = new MatrixCursor(columns, rows);
+            String[] row = new String[columns.length];
+            for (int i = 0; i < rows; i++) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = readString(buffer);
+                }
+                cursor.addRow(row);
+            }
+            return cursor;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Store every row of {@code albums}, whose position is restored afterwards.
+     */
+    static void writeAlbums(Context context, long signature, Cursor albums) {
+        File file = file(context, FILE_ALBUMS);
+        File temporary = temporary(file);
+        DataOutputStream out = open(temporary, signature);
+        if (out == null) {
+            return;
+        }
+        int position = albums.getPosition();
+        try {
+            int columns = albums.getColumnCount();
+            out.writeInt(albums.getCount());
+            out.writeInt(columns);
+            albums.moveToPosition(-1);
+            while (albums.moveToNext()) {
+                for (int i = 0; i < columns; i++) {
+                    writeString(out, albums.getString(i));
+                }
+            }
+            commit(out, temporary, file);
+        } catch (IOException e) {
+            abort(out, temporary);
+        } finally {
+            albums.moveToPosition(position);
+        }
+    }
+
+    private static File file(Context context, String name) {
+        return new File(new File(context.getCacheDir(), DIRECTORY), name);
+    }
+
+    private static ByteBuffer map(File file, long signature) {
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            return null;
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != signature) {
+                return null;
+            }
+            return buffer;
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static DataOutputStream open(File temporary, long signature) {
+        if (temporary == null) {
+            return null;
+        }
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(signature);
+            return out;
+        } catch (IOException e) {
+            temporary.delete();
+            return null;
+        }
+    }
+
+    /**
+     * @return a new empty file next to {@code file}, or null. Loads of the same query may write at the same time,
+     * each one through its own file.
+     */
+    private static File temporary(File file) {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            return null;
+        }
+        try {
+            return File.createTempFile(file.getName(), ".tmp", dir);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void commit(DataOutputStream out, File temporary, File file) throws IOException {
+        out.close();
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Failed to replace " + file);
+        }
+    }
+
+    private static void abort(DataOutputStream out, File temporary) {
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        temporary.delete();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupted album list");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static long hash(long hash, String value) {
+        if (value == null) {
+            return 31 * hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = 31 * hash + value.charAt(i);
+        }
+        return 31 * hash + value.length();
+    }
+}
@@ -16,30 +16,36 @@
  */
 package com.zhihu.matisse.internal.loader;
 
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
-import android.database.MatrixCursor;
-import android.database.MergeCursor;
 import android.net.Uri;
 import android.provider.MediaStore;
-import android.support.v4.content.CursorLoader;
 
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.utils.MediaStoreCompat;
 
+import java.util.Arrays;
+
 /**
- * Load images and videos into a single cursor.
+ * Load images and videos into a single {@link MediaIndex}.
  */
-public class MediaLoader extends CursorLoader {
-    private static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
+public class MediaLoader extends MediaIndexLoader {
+    static final Uri QUERY_URI = MediaStore.Files.getContentUri("external");
     private static final String[] PROJECTION = {
             MediaStore.Files.FileColumns._ID,
-            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.Images.Media.BUCKET_ID,
+            MediaStore.Images.Media.BUCKET_DISPLAY_NAME,
+            MediaStore.Images.Media.DATE_TAKEN,
             MediaStore.MediaColumns.MIME_TYPE,
             MediaStore.MediaColumns.SIZE,
-            "duration"};
+            "duration",
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED};
+    private static final String[] PROJECTION_ID = {MediaStore.Files.FileColumns._ID};
 
     // === params for album ALL && showSingleMediaType: false ===
     private static final String SELECTION_ALL =
@@ -93,62 +99,242 @@ public class MediaLoader extends CursorLoader {
     }
     // ===============================================================
 
-    private static final String ORDER_BY = MediaStore.Images.Media.DATE_TAKEN + " DESC";
+    // rows changed since a snapshot, seconds are inclusive as several rows may share the last one
+    static final String SELECTION_CHANGED =
+            " AND (" + MediaStore.MediaColumns.DATE_ADDED + ">=?"
+                    + " OR " + MediaStore.MediaColumns.DATE_MODIFIED + ">=?)";
+
+    // ties broken by id so that changed rows can be merged into a snapshot at the same place a full query puts them
+    static final String ORDER_BY =
+            MediaStore.Images.Media.DATE_TAKEN + " DESC, " + MediaStore.Files.FileColumns._ID + " DESC";
+    private static final String ORDER_BY_ID = MediaStore.Files.FileColumns._ID;
+    private final String mSelection;
+    private final String[] mSelectionArgs;
     private final boolean mEnableCapture;
+    // only the "All" album is stored, it is the one shown on launch
+    private final boolean mPersistent;
+    private final long mSignature;
+
+    // only touched by loadInBackground()
+    private boolean mStoreChecked;
+    private MediaIndex mLast;
+    private volatile boolean mVerifyPending;
 
-    private MediaLoader(Context context, String selection, String[] selectionArgs, boolean capture) {
-        super(context, QUERY_URI, PROJECTION, selection, selectionArgs, ORDER_BY);
+    private MediaLoader(Context context, String selection, String[] selectionArgs, boolean capture,
+                        boolean persistent) {
+        super(context);
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
         mEnableCapture = capture;
+        mPersistent = persistent;
+        mSignature = MediaIndexStore.signatureOf(selection, selectionArgs, ORDER_BY, capture);
     }
 
-    public static CursorLoader newInstance(Context context, Album album, boolean capture) {
-        String selection;
-        String[] selectionArgs;
-        boolean enableCapture;
+    public static MediaLoader newInstance(Context context, Album album, boolean capture) {
+        return new MediaLoader(context, selectionOf(album), selectionArgsOf(album), album.isAll() && capture,
+                album.isAll());
+    }
 
+    /**
+     * Selection clause matching media of the {@link Album} under the current {@link SelectionSpec}, including
+     * its {@link MediaConstraints constraints}.
+     */
+    static String selectionOf(Album album) {
         if (album.isAll()) {
-            if (SelectionSpec.getInstance().onlyShowImages()) {
-                selection = SELECTION_ALL_FOR_SINGLE_MEDIA_TYPE;
-                selectionArgs = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
-            } else if (SelectionSpec.getInstance().onlyShowVideos()) {
-                selection = SELECTION_ALL_FOR_SINGLE_MEDIA_TYPE;
-                selectionArgs = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
-            } else {
-                selection = SELECTION_ALL;
-                selectionArgs = SELECTION_ALL_ARGS;
-            }
-            enableCapture = capture;
+            return selectionOfAll();
+        }
+        boolean singleMediaType = SelectionSpec.getInstance().onlyShowImages()
+                || SelectionSpec.getInstance().onlyShowVideos();
+        return (singleMediaType ? SELECTION_ALBUM_FOR_SINGLE_MEDIA_TYPE : SELECTION_ALBUM)
+                + MediaConstraints.selectionOf(SelectionSpec.getInstance());
+    }
+
+    /**
+     * Selection clause matching media of the "All" album under the current {@link SelectionSpec}, including
+     * its {@link MediaConstraints constraints}.
+     */
+    static String selectionOfAll() {
+        boolean singleMediaType = SelectionSpec.getInstance().onlyShowImages()
+                || SelectionSpec.getInstance().onlyShowVideos();
+        return (singleMediaType ? SELECTION_ALL_FOR_SINGLE_MEDIA_TYPE : SELECTION_ALL)
+                + MediaConstraints.selectionOf(SelectionSpec.getInstance());
+    }
+
+    /**
+     * Arguments for the clause returned by {@link #selectionOf(Album)}.
+     */
+    static String[] selectionArgsOf(Album album) {
+        if (album.isAll()) {
+            return selectionArgsOfAll();
+        }
+        String[] args;
+        if (SelectionSpec.getInstance().onlyShowImages()) {
+            args = getSelectionAlbumArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE,
+                    album.getId());
+        } else if (SelectionSpec.getInstance().onlyShowVideos()) {
+            args = getSelectionAlbumArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO,
+                    album.getId());
         } else {
-            if (SelectionSpec.getInstance().onlyShowImages()) {
-                selection = SELECTION_ALBUM_FOR_SINGLE_MEDIA_TYPE;
-                selectionArgs = getSelectionAlbumArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE,
-                        album.getId());
-            } else if (SelectionSpec.getInstance().onlyShowVideos()) {
-                selection = SELECTION_ALBUM_FOR_SINGLE_MEDIA_TYPE;
-                selectionArgs = getSelectionAlbumArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO,
-                        album.getId());
-            } else {
-                selection = SELECTION_ALBUM;
-                selectionArgs = getSelectionAlbumArgs(album.getId());
-            }
-            enableCapture = false;
+            args = getSelectionAlbumArgs(album.getId());
+        }
+        return appendArgs(args, MediaConstraints.argsOf(SelectionSpec.getInstance()));
+    }
+
+    /**
+     * Arguments for the clause returned by {@link #selectionOfAll()}.
+     */
+    static String[] selectionArgsOfAll() {
+        String[] args;
+        if (SelectionSpec.getInstance().onlyShowImages()) {
+            args = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+        } else if (SelectionSpec.getInstance().onlyShowVideos()) {
+            args = getSelectionArgsForSingleMediaType(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+        } else {
+            args = SELECTION_ALL_ARGS;
         }
-        return new MediaLoader(context, selection, selectionArgs, enableCapture);
+        return appendArgs(args, MediaConstraints.argsOf(SelectionSpec.getInstance()));
     }
 
     @Override
-    public Cursor loadInBackground() {
-        Cursor result = super.loadInBackground();
-        if (!mEnableCapture || !MediaStoreCompat.hasCameraFeature(getContext())) {
-            return result;
+    public MediaIndex loadInBackground() {
+        MediaIndex retained = mPersistent ? MediaSnapshotCache.getMedia(mSignature) : null;
+        if (mPersistent && mLast == null) {
+            if (retained != null) {
+                // loaded by an earlier launch or a prewarm, newer than the stored copy
+                mStoreChecked = true;
+                mLast = retained;
+                if (MediaSnapshotCache.isMediaFresh(mSignature)) {
+                    return retained;
+                }
+            }
+        }
+        if (mPersistent && !mStoreChecked) {
+            mStoreChecked = true;
+            mLast = MediaIndexStore.readMedia(getContext(), mSignature);
+            if (mLast != null) {
+                // show what was there last time, then check it against the media store
+                mVerifyPending = true;
+                return mLast;
+            }
+        }
+
+        if (!mPersistent) {
+            mLast = query();
+            return mLast;
+        }
+        // the picker, its album list and a prewarm all load the "All" media, only one of them queries at a time
+        synchronized (MediaSnapshotCache.QUERY_LOCK) {
+            MediaIndex shared = MediaSnapshotCache.getMedia(mSignature);
+            if (shared != null && shared != retained && MediaSnapshotCache.isMediaFresh(mSignature)) {
+                // loaded by another one while this one was waiting
+                mLast = shared;
+                return shared;
+            }
+            int generation = MediaSnapshotCache.getGeneration(getContext());
+            MediaIndex index = query();
+            if (!index.contentEquals(mLast)) {
+                MediaIndexStore.writeMedia(getContext(), mSignature, index);
+            }
+            MediaSnapshotCache.putMedia(mSignature, index, generation);
+            mLast = index;
+            return index;
+        }
+    }
+
+    private MediaIndex query() {
+        MediaIndex index = mLast != null ? loadDelta(mLast) : null;
+        return index != null ? index : loadAll();
+    }
+
+    /**
+     * Load the current media right away, checking a stored copy instead of returning it. For use outside a
+     * {@link android.support.v4.app.LoaderManager}.
+     */
+    MediaIndex loadCurrent() {
+        MediaIndex index = loadInBackground();
+        if (mVerifyPending) {
+            mVerifyPending = false;
+            index = loadInBackground();
+        }
+        return index;
+    }
+
+    private MediaIndex loadAll() {
+        Cursor cursor = getContext().getContentResolver().query(QUERY_URI, PROJECTION, mSelection, mSelectionArgs,
+                ORDER_BY);
+        MediaIndex.Builder builder = new MediaIndex.Builder(cursor != null ? cursor.getCount() + 1 : 1);
+        if (mEnableCapture && MediaStoreCompat.hasCameraFeature(getContext())) {
+            builder.add(Item.ITEM_ID_CAPTURE, 0, 0, 0, "", 0, 0);
+        }
+        if (cursor != null) {
+            try {
+                builder.addAll(cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Query only the rows added or modified since {@code base} and the ids of all rows, instead of every column
+     * of every row.
+     *
+     * @return the updated snapshot, or null if a full query is needed.
+     */
+    private MediaIndex loadDelta(MediaIndex base) {
+        ContentResolver resolver = getContext().getContentResolver();
+        Cursor changed = resolver.query(QUERY_URI, PROJECTION, mSelection + SELECTION_CHANGED,
+                appendArgs(mSelectionArgs, String.valueOf(base.getMaxDateAdded()),
+                        String.valueOf(base.getMaxDateModified())), ORDER_BY);
+        if (changed == null) {
+            return null;
+        }
+        MediaIndex changes;
+        try {
+            if (changed.getCount() > MediaDelta.MAX_CHANGED_ROWS) {
+                return null;
+            }
+            changes = new MediaIndex.Builder(changed.getCount()).addAll(changed).build();
+        } finally {
+            changed.close();
+        }
+
+        Cursor ids = resolver.query(QUERY_URI, PROJECTION_ID, mSelection, mSelectionArgs, ORDER_BY_ID);
+        if (ids == null) {
+            return null;
         }
-        MatrixCursor dummy = new MatrixCursor(PROJECTION);
-        dummy.addRow(new Object[]{Item.ITEM_ID_CAPTURE, Item.ITEM_DISPLAY_NAME_CAPTURE, "", 0, 0});
-        return new MergeCursor(new Cursor[]{dummy, result});
+        long[] presentIds;
+        try {
+            presentIds = new long[ids.getCount()];
+            for (int i = 0; ids.moveToNext() && i < presentIds.length; i++) {
+                presentIds[i] = ids.getLong(0);
+            }
+        } finally {
+            ids.close();
+        }
+        // already in order from the query, sorting a sorted run is a linear check
+        Arrays.sort(presentIds);
+        return MediaDelta.reconcile(base, changes, presentIds);
+    }
+
+    static String[] appendArgs(String[] args, String... more) {
+        String[] result = new String[args.length + more.length];
+        System.arraycopy(args, 0, result, 0, args.length);
+        System.arraycopy(more, 0, result, args.length, more.length);
+        return result;
     }
 
     @Override
-    public void onContentChanged() {
-        super.onContentChanged();
+    public void deliverResult(MediaIndex index) {
+        MediaIndex current = getIndex();
+        // when the media store still matches the stored copy already shown, keep the bound snapshot
+        if (index == null || index == current || !index.contentEquals(current)) {
+            super.deliverResult(index);
+        }
+        if (mVerifyPending && isStarted()) {
+            mVerifyPending = false;
+            onContentChanged();
+        }
     }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Display names of the media of the "All" album, by id. They are not part of {@link MediaIndex}: most sessions
+ * never read them, and they weigh more than every other column together.
+ * <p>
+ * Each name has a slot. When media are added or renamed, the names are updated by appending the changed rows to
+ * new slots, so that what was derived from the previous slots, such as a search index, stays valid for them.
+ * Read-only once loaded.
+ */
+public final class MediaNames {
+    private static final String[] PROJECTION = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.MediaColumns.DISPLAY_NAME,
+            MediaStore.MediaColumns.DATE_ADDED,
+            MediaStore.MediaColumns.DATE_MODIFIED};
+    private static final MediaNames EMPTY = new MediaNames(new Object(), new long[0], new String[0], 0, 0, 0);
+    private static final Object LOCK = new Object();
+    private static String sSignature;
+    private static MediaNames sNames;
+
+    // shared by names appended to one another
+    private final Object mLineage;
+    private final LongIntHashMap mSlots;
+    private final long[] mIds;
+    private final String[] mNames;
+    private final int mCount;
+    private final long mMaxDateAdded;
+    private final long mMaxDateModified;
+
+    private MediaNames(Object lineage, long[] ids, String[] names, int count, long maxDateAdded,
+                       long maxDateModified) {
+        mLineage = lineage;
+        mIds = ids;
+        mNames = names;
+        mCount = count;
+        mMaxDateAdded = maxDateAdded;
+        mMaxDateModified = maxDateModified;
+        mSlots = new LongIntHashMap(-1, count);
+        // a renamed item's latest slot wins
+        for (int slot = 0; slot < count; slot++) {
+            mSlots.put(ids[slot], slot);
+        }
+    }
+
+    /**
+     * Names of every item of {@code index} under the current {@link com.zhihu.matisse.internal.entity.SelectionSpec},
+     * shared across callers and only querying what changed since they were last loaded. Blocks, call it on the I/O
+     * executor.
+     */
+    public static MediaNames get(Context context, MediaIndex index) {
+        String selection = MediaLoader.selectionOfAll();
+        String[] selectionArgs = MediaLoader.selectionArgsOfAll();
+        String signature = selection + Arrays.toString(selectionArgs);
+        MediaNames cached;
+        synchronized (LOCK) {
+            cached = signature.equals(sSignature) ? sNames : null;
+        }
+        if (cached != null && cached.isCurrentFor(index)) {
+            return cached;
+        }
+        MediaNames names = cached != null ? cached.appendChanges(context, selection, selectionArgs) : null;
+        if (names == null || !names.covers(index)) {
+            names = query(context, null, selection, selectionArgs);
+        }
+        if (names == null) {
+            // media store unavailable
+            return cached != null ? cached : EMPTY;
+        }
+        synchronized (LOCK) {
+            sSignature = signature;
+            sNames = names;
+        }
+        return names;
+    }
+
+    // also catches renames, which change no id
+    private boolean isCurrentFor(MediaIndex index) {
+        return index.getMaxDateAdded() <= mMaxDateAdded && index.getMaxDateModified() <= mMaxDateModified
+                && covers(index);
+    }
+
+    private MediaNames appendChanges(Context context, String selection, String[] selectionArgs) {
+        return query(context, this, selection + MediaLoader.SELECTION_CHANGED,
+                MediaLoader.appendArgs(selectionArgs, String.valueOf(mMaxDateAdded),
+                        String.valueOf(mMaxDateModified)));
+    }
+
+    /**
+     * @return names of {@code base} followed by the rows of the query, or null if the query failed.
+     */
+    private static MediaNames query(Context context, MediaNames base, String selection, String[] selectionArgs) {
+        Cursor cursor = context.getContentResolver().query(MediaLoader.QUERY_URI, PROJECTION, selection,
+                selectionArgs, null);
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            int baseCount = base == null ? 0 : base.mCount;
+            int capacity = baseCount + cursor.getCount();
+            long[] ids = base == null ? new long[capacity] : Arrays.copyOf(base.mIds, capacity);
+            String[] names = base == null ? new String[capacity] : Arrays.copyOf(base.mNames, capacity);
+            long maxDateAdded = base == null ? 0 : base.mMaxDateAdded;
+            long maxDateModified = base == null ? 0 : base.mMaxDateModified;
+            int idColumn = cursor.getColumnIndex(MediaStore.Files.FileColumns._ID);
+            int nameColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DISPLAY_NAME);
+            int dateAddedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_ADDED);
+            int dateModifiedColumn = cursor.getColumnIndex(MediaStore.MediaColumns.DATE_MODIFIED);
+            int count = baseCount;
+            while (count < capacity && cursor.moveToNext()) {
+                ids[count] = cursor.getLong(idColumn);
+                names[count++] = cursor.getString(nameColumn);
+                maxDateAdded = Math.max(maxDateAdded, cursor.getLong(dateAddedColumn));
+                maxDateModified = Math.max(maxDateModified, cursor.getLong(dateModifiedColumn));
+            }
+            return new MediaNames(base == null ? new Object() : base.mLineage, ids, names, count, maxDateAdded,
+                    maxDateModified);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return names of {@code base}, or of none, followed by {@code names} of the items {@code ids}.
+     */
+    static MediaNames of(MediaNames base, long[] ids, String[] names) {
+        int baseCount = base == null ? 0 : base.mCount;
+        long[] allIds = base == null ? new long[ids.length] : Arrays.copyOf(base.mIds, baseCount + ids.length);
+        String[] allNames = base == null ? new String[names.length]
+                : Arrays.copyOf(base.mNames, baseCount + names.length);
+        System.arraycopy(ids, 0, allIds, baseCount, ids.length);
+        System.arraycopy(names, 0, allNames, baseCount, names.length);
+        return new MediaNames(base == null ? new Object() : base.mLineage, allIds, allNames, allIds.length,
+                base == null ? 0 : base.mMaxDateAdded, base == null ? 0 : base.mMaxDateModified);
+    }
+
+    /**
+     * @return an object shared by these names and the ones they were appended to.
+     */
+    public Object getLineage() {
+        return mLineage;
+    }
+
+    /**
+     * @return number of slots, including the earlier ones of renamed items.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return slot of the item's current name, or -1.
+     */
+    public int slotOf(long id) {
+        return mSlots.get(id);
+    }
+
+    public String nameAt(int slot) {
+        return mNames[slot];
+    }
+
+    /**
+     * @return display name of the item, or null if it is unknown or was added after loading.
+     */
+    public String nameOf(long id) {
+        int slot = mSlots.get(id);
+        return slot == -1 ? null : mNames[slot];
+    }
+
+    /**
+     * @return whether a name was loaded for every item of {@code index} but the capture one.
+     */
+    public boolean covers(MediaIndex index) {
+        for (int i = 0; i < index.getCount(); i++) {
+            if (!index.isCapture(i) && !mSlots.containsKey(index.idAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.MediaStore;
+
+import com.zhihu.matisse.internal.entity.Album;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.utils.MediaStoreCompat;
+
+/**
+ * Load images and videos page by page, keyed on ({@code datetaken}, {@code _id}) so that every page is an
+ * indexed range scan instead of an {@code OFFSET} skip. Each delivered {@link MediaIndex} contains all pages
+ * loaded so far and {@link MediaIndex#isContinuationOf(MediaIndex) continues} the previous one; call
+ * {@link #loadNextPage()} to append the next page.
+ */
+public class MediaPageLoader extends MediaIndexLoader {
+    private static final String COLUMN_DATE_TAKEN = MediaStore.Images.Media.DATE_TAKEN;
+    private static final String[] PROJECTION = {
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.Images.Media.BUCKET_ID,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.SIZE,
+            "duration",
+            COLUMN_DATE_TAKEN};
+
+    // rows with a NULL datetaken sort after every dated row in descending order
+    private static final String SELECTION_AFTER_DATED =
+            " AND (" + COLUMN_DATE_TAKEN + "<?"
+                    + " OR " + COLUMN_DATE_TAKEN + " IS NULL"
+                    + " OR (" + COLUMN_DATE_TAKEN + "=? AND " + MediaStore.Files.FileColumns._ID + "<?))";
+    private static final String SELECTION_AFTER_UNDATED =
+            " AND " + COLUMN_DATE_TAKEN + " IS NULL"
+                    + " AND " + MediaStore.Files.FileColumns._ID + "<?";
+
+    private static final String ORDER_BY =
+            COLUMN_DATE_TAKEN + " DESC, " + MediaStore.Files.FileColumns._ID + " DESC";
+
+    private final String mSelection;
+    private final String[] mSelectionArgs;
+    private final boolean mEnableCapture;
+    private final int mPageSize;
+
+    // only touched by loadInBackground(), which never runs concurrently with itself
+    private MediaIndex.Builder mBuilder;
+    private int mLoadedCount;
+    private boolean mAnchorDateNull;
+    private long mAnchorDate;
+    private long mAnchorId;
+
+    private volatile boolean mExhausted;
+    private volatile boolean mRestart;
+    private boolean mPageRequested;
+
+    private MediaPageLoader(Context context, String selection, String[] selectionArgs, boolean capture,
+                            int pageSize) {
+        super(context);
+        mSelection = selection;
+        mSelectionArgs = selectionArgs;
+        mEnableCapture = capture;
+        mPageSize = pageSize;
+    }
+
+    public static MediaPageLoader newInstance(Context context, Album album, boolean capture, int pageSize) {
+        return new MediaPageLoader(context, MediaLoader.selectionOf(album), MediaLoader.selectionArgsOf(album),
+                album.isAll() && capture, pageSize);
+    }
+
+    /**
+     * Request the page following the rows already delivered. Does nothing while a page is being loaded or
+     * after the last page.
+     */
+    public void loadNextPage() {
+        if (mPageRequested || getIndex() == null || mExhausted) {
+            return;
+        }
+        mPageRequested = true;
+        forceLoad();
+    }
+
+    public boolean hasMorePages() {
+        return getIndex() == null || !mExhausted;
+    }
+
+    @Override
+    public MediaIndex loadInBackground() {
+        int limit = mPageSize;
+        if (mRestart || mBuilder == null) {
+            mRestart = false;
+            // as many rows as were shown, so that the grid keeps its length and scroll position
+            limit = Math.max(mPageSize, mLoadedCount);
+            mBuilder = new MediaIndex.Builder(limit + 1);
+            mLoadedCount = 0;
+            if (mEnableCapture && MediaStoreCompat.hasCameraFeature(getContext())) {
+                mBuilder.add(Item.ITEM_ID_CAPTURE, 0, 0, 0, "", 0, 0);
+            }
+        }
+
+        String selection = mSelection;
+        String[] selectionArgs = mSelectionArgs;
+        if (mLoadedCount > 0) {
+            if (mAnchorDateNull) {
+                selection += SELECTION_AFTER_UNDATED;
+                selectionArgs = MediaLoader.appendArgs(selectionArgs, String.valueOf(mAnchorId));
+            } else {
+                selection += SELECTION_AFTER_DATED;
+                selectionArgs = MediaLoader.appendArgs(selectionArgs, String.valueOf(mAnchorDate),
+                        String.valueOf(mAnchorDate), String.valueOf(mAnchorId));
+            }
+        }
+
+        Cursor page = getContext().getContentResolver().query(MediaLoader.QUERY_URI, PROJECTION,
+                selection, selectionArgs, ORDER_BY + " LIMIT " + limit);
+        if (page == null) {
+            return mBuilder.build();
+        }
+        try {
+            int count = page.getCount();
+            if (count > 0) {
+                page.moveToLast();
+                int dateColumn = page.getColumnIndex(COLUMN_DATE_TAKEN);
+                mAnchorDateNull = page.isNull(dateColumn);
+                mAnchorDate = page.getLong(dateColumn);
+                mAnchorId = page.getLong(page.getColumnIndex(MediaStore.Files.FileColumns._ID));
+                page.moveToPosition(-1);
+                mBuilder.addAll(page);
+            }
+            mLoadedCount += count;
+            mExhausted = count < limit;
+        } finally {
+            page.close();
+        }
+        return mBuilder.build();
+    }
+
+    @Override
+    public void deliverResult(MediaIndex index) {
+        mPageRequested = false;
+        super.deliverResult(index);
+    }
+
+    @Override
+    public void onContentChanged() {
+        // whatever was loaded may have moved, reload it from the first row in one query
+        mRestart = true;
+        super.onContentChanged();
+    }
+
+    @Override
+    public void onCanceled(MediaIndex index) {
+        // rows of a canceled page stay in the builder and are published with the next one
+        mPageRequested = false;
+    }
+}
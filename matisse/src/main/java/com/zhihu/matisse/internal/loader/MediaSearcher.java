@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.Executor;
+
+/**
+ * Narrow loaded media to those whose display name contains a query, case insensitive. Names are loaded on the I/O
+ * executor and indexed by trigram on the CPU executor, both only for what changed since the previous search.
+ * A query extending the previous one over the same media only checks the previous matches, and a search
+ * superseded by a newer one is dropped, so that searching keeps up with typing. Main thread only.
+ */
+public final class MediaSearcher {
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // index updates and queries run one at a time, in order
+    private final Executor mSerialExecutor = new SerialExecutor();
+    private final NameTrigramIndex mIndex = new NameTrigramIndex();
+    // latest request, earlier ones are dropped
+    private volatile int mRequest;
+    // names last used, with the media they cover
+    private volatile Names mNames;
+
+    // only touched on mSerialExecutor: the last result, to narrow down from
+    private MediaIndex mLastSource;
+    private String mLastQuery;
+    private int[] mLastPositions;
+
+    public MediaSearcher(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * Search {@code source} in the background and pass the matches, in the order of {@code source}, to
+     * {@code callback} on the main thread, unless another search is started before.
+     *
+     * @param query not empty.
+     */
+    public void search(final MediaIndex source, final String query, final Callback callback) {
+        final int request = ++mRequest;
+        Names names = mNames;
+        if (names != null && names.mSource == source) {
+            mSerialExecutor.execute(new SearchTask(request, source, query, names.mNames, callback));
+            return;
+        }
+        SelectionSpec.getInstance().ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request != mRequest) {
+                    return;
+                }
+                MediaNames names = MediaNames.get(mContext, source);
+                mNames = new Names(source, names);
+                mSerialExecutor.execute(new SearchTask(request, source, query, names, callback));
+            }
+        });
+    }
+
+    /**
+     * Drop the searches in progress.
+     */
+    public void cancel() {
+        mRequest++;
+    }
+
+    private int[] find(MediaIndex source, String query, MediaNames names) {
+        mIndex.update(names);
+        BitSet candidates = null;
+        if (query.length() >= NameTrigramIndex.GRAM_LENGTH) {
+            candidates = new BitSet(names.getCount());
+            for (int slot : mIndex.candidatesOf(query)) {
+                candidates.set(slot);
+            }
+        }
+        boolean narrowing = source == mLastSource && mLastQuery != null && query.contains(mLastQuery);
+        int count = narrowing ? mLastPositions.length : source.getCount();
+        int[] positions = new int[count];
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            int position = narrowing ? mLastPositions[i] : i;
+            if (source.isCapture(position)) {
+                continue;
+            }
+            int slot = names.slotOf(source.idAt(position));
+            if (slot != -1 && (candidates == null || candidates.get(slot))
+                    && containsIgnoreCase(names.nameAt(slot), query)) {
+                positions[found++] = position;
+            }
+        }
+        positions = Arrays.copyOf(positions, found);
+        mLastSource = source;
+        mLastQuery = query;
+        mLastPositions = positions;
+        return positions;
+    }
+
+    private static boolean containsIgnoreCase(String text, String query) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i + query.length() <= text.length(); i++) {
+            if (text.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public interface Callback {
+        void onSearched(MediaIndex source, String query, MediaIndex result);
+    }
+
+    private static final class Names {
+        private final MediaIndex mSource;
+        private final MediaNames mNames;
+
+        Names(MediaIndex source, MediaNames names) {
+            mSource = source;
+            mNames = names;
+        }
+    }
+
+    private final class SearchTask implements Runnable {
+        private final int mTaskRequest;
+        private final MediaIndex mSource;
+        private final String mQuery;
+        private final MediaNames mTaskNames;
+        private final Callback mCallback;
+
+        SearchTask(int request, MediaIndex source, String query, MediaNames names, Callback callback) {
+            mTaskRequest = request;
+            mSource = source;
+            mQuery = query;
+            mTaskNames = names;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mTaskRequest != mRequest) {
+                return;
+            }
+            final MediaIndex result = mSource.view(find(mSource, mQuery, mTaskNames), 0);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mTaskRequest == mRequest) {
+                        mCallback.onSearched(mSource, mQuery, result);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Run tasks on the CPU executor one after another.
+     */
+    private static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        @Override
+        public synchronized void execute(final Runnable task) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                SelectionSpec.getInstance().cpuExecutor.execute(mActive);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.zhihu.matisse.DateSection;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.MediaSections;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Compute the {@link MediaSections} of shown media on the CPU executor, after they are shown. An index continuing
+ * the last one sectioned, i.e. the next page, only has its new items read. Sections are kept as long as their
+ * index, so showing it again needs no computation. Main thread only.
+ */
+public final class MediaSectioner {
+    private final DateSection mPeriod;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Map<MediaIndex, MediaSections> mSections = new WeakHashMap<>();
+    // last computed, extended for the index continuing it
+    private MediaIndex mLastIndex;
+    private MediaSections mLastSections;
+
+    public MediaSectioner(DateSection period) {
+        mPeriod = period;
+    }
+
+    /**
+     * @return sections of {@code index}, or null if not computed yet.
+     */
+    public MediaSections getSections(MediaIndex index) {
+        return mSections.get(index);
+    }
+
+    /**
+     * Compute the sections of {@code index} in the background, or right away if already done, and pass them to
+     * {@code callback} on the main thread.
+     */
+    public void section(final MediaIndex index, final Callback callback) {
+        MediaSections sections = mSections.get(index);
+        if (sections != null) {
+            callback.onSectioned(index, sections);
+            return;
+        }
+        final MediaSections previous = index.isContinuationOf(mLastIndex) ? mLastSections : null;
+        SelectionSpec.getInstance().cpuExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final MediaSections sections = MediaSections.compute(index, mPeriod, previous);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mSections.put(index, sections);
+                        mLastIndex = index;
+                        mLastSections = sections;
+                        callback.onSectioned(index, sections);
+                    }
+                });
+            }
+        });
+    }
+
+    public interface Callback {
+        void onSectioned(MediaIndex index, MediaSections sections);
+    }
+}
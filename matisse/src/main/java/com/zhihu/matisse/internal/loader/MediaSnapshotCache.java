@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.database.ContentObserver;
+import android.support.v4.content.ContextCompat;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+/**
+ * In-process copy of the last "All" media and album list, kept across launches of the picker and filled ahead of
+ * the first one by {@link #prewarm(Context)}. A copy is fresh until the media store reports a change; a stale copy
+ * is still the base of an incremental reload.
+ */
+public final class MediaSnapshotCache {
+    /**
+     * Held by {@link MediaLoader} while it queries the "All" media, so that loads running at the same time reuse
+     * the first one's result.
+     */
+    static final Object QUERY_LOCK = new Object();
+    private static final Object LOCK = new Object();
+    private static ContentObserver sObserver;
+    // bumped on every media store change, a copy is fresh while it holds the current generation
+    private static int sGeneration;
+
+    private static long sMediaSignature;
+    private static MediaIndex sMedia;
+    private static int sMediaGeneration;
+    private static long sAlbumSignature;
+    private static AlbumAggregator sAlbums;
+    private static int sAlbumGeneration;
+
+    private MediaSnapshotCache() {
+    }
+
+    /**
+     * Load the "All" media and the album list for the current {@link SelectionSpec} in the background, so that the
+     * next launch of the picker with the same spec shows them without querying. The picker's own loads wait for a
+     * prewarm still running instead of querying again. Does nothing until storage may be read.
+     */
+    public static void prewarm(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.READ_EXTERNAL_STORAGE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        // the album list is aggregated from the "All" media, loading it loads both
+        final AlbumLoader albums = (AlbumLoader) AlbumLoader.newInstance(appContext);
+        SelectionSpec.getInstance().ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    albums.loadCurrent();
+                } catch (SecurityException e) {
+                    // revoked meanwhile, the picker asks again
+                }
+            }
+        });
+    }
+
+    /**
+     * Start watching the media store if not yet done.
+     *
+     * @return the generation to pass to {@code put} with what is loaded next.
+     */
+    static int getGeneration(Context context) {
+        synchronized (LOCK) {
+            if (sObserver == null) {
+                sObserver = new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        synchronized (LOCK) {
+                            sGeneration++;
+                        }
+                    }
+                };
+                context.getApplicationContext().getContentResolver()
+                        .registerContentObserver(MediaLoader.QUERY_URI, true, sObserver);
+            }
+            return sGeneration;
+        }
+    }
+
+    /**
+     * @return the media retained for this signature, fresh or not, or null.
+     */
+    static MediaIndex getMedia(long signature) {
+        synchronized (LOCK) {
+            return sMedia != null && sMediaSignature == signature ? sMedia : null;
+        }
+    }
+
+    static boolean isMediaFresh(long signature) {
+        synchronized (LOCK) {
+            return sMedia != null && sMediaSignature == signature && sMediaGeneration == sGeneration;
+        }
+    }
+
+    /**
+     * @param generation from {@link #getGeneration(Context)} before {@code media} was queried; the copy is stale
+     *                   right away if the media store changed since.
+     */
+    static void putMedia(long signature, MediaIndex media, int generation) {
+        synchronized (LOCK) {
+            sMediaSignature = signature;
+            sMedia = media;
+            sMediaGeneration = generation;
+        }
+    }
+
+    /**
+     * @return the album list retained for this signature if no change happened since it was loaded, or null.
+     */
+    static AlbumAggregator getFreshAlbums(long signature) {
+        synchronized (LOCK) {
+            return sAlbums != null && sAlbumSignature == signature && sAlbumGeneration == sGeneration
+                    ? sAlbums : null;
+        }
+    }
+
+    static void putAlbums(long signature, AlbumAggregator albums, int generation) {
+        synchronized (LOCK) {
+            sAlbumSignature = signature;
+            sAlbums = albums;
+            sAlbumGeneration = generation;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.zhihu.matisse.SortOrder;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Sort loaded media in memory. Each order of an index is computed once, on the CPU executor, as a view over the
+ * index's columns and kept as long as the index is, so switching orders costs nothing after the first time.
+ * The capture item stays first, and ties keep the order of the query, i.e. {@link SortOrder#DATE_TAKEN}.
+ * Display names are only loaded for the first {@link SortOrder#NAME} sort, see {@link MediaNames}. Main thread only.
+ */
+public final class MediaSorter {
+    private static final int ORDER_COUNT = SortOrder.values().length;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // views by source index and order ordinal, released with the index
+    private final Map<MediaIndex, MediaIndex[]> mSorted = new WeakHashMap<>();
+
+    public MediaSorter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return {@code source} sorted by {@code order}, or null if not computed yet.
+     */
+    public MediaIndex getSorted(MediaIndex source, SortOrder order) {
+        if (order == SortOrder.DATE_TAKEN) {
+            // the order of the query
+            return source;
+        }
+        MediaIndex[] sorted = mSorted.get(source);
+        return sorted == null ? null : sorted[order.ordinal()];
+    }
+
+    /**
+     * Sort {@code source} by {@code order} in the background, or right away if already done, and pass the result
+     * to {@code callback} on the main thread.
+     */
+    public void sort(final MediaIndex source, final SortOrder order, final Callback callback) {
+        MediaIndex sorted = getSorted(source, order);
+        if (sorted != null) {
+            callback.onSorted(source, order, sorted);
+            return;
+        }
+        final SelectionSpec spec = SelectionSpec.getInstance();
+        if (order == SortOrder.NAME) {
+            spec.ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    spec.cpuExecutor.execute(new SortTask(source, order, MediaNames.get(mContext, source), callback));
+                }
+            });
+        } else {
+            spec.cpuExecutor.execute(new SortTask(source, order, null, callback));
+        }
+    }
+
+    private final class SortTask implements Runnable {
+        private final MediaIndex mSource;
+        private final SortOrder mOrder;
+        private final MediaNames mNames;
+        private final Callback mCallback;
+
+        SortTask(MediaIndex source, SortOrder order, MediaNames names, Callback callback) {
+            mSource = source;
+            mOrder = order;
+            mNames = names;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            final MediaIndex result = mSource.view(permutationOf(mSource, mOrder, mNames), 0);
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    MediaIndex[] sorted = mSorted.get(mSource);
+                    if (sorted == null) {
+                        sorted = new MediaIndex[ORDER_COUNT];
+                        mSorted.put(mSource, sorted);
+                    }
+                    sorted[mOrder.ordinal()] = result;
+                    mCallback.onSorted(mSource, mOrder, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param names display names by id, only read for {@link SortOrder#NAME}.
+     * @return positions of {@code index} in {@code order}.
+     */
+    static int[] permutationOf(MediaIndex index, SortOrder order, MediaNames names) {
+        int count = index.getCount();
+        int first = count > 0 && index.isCapture(0) ? 1 : 0;
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
+        }
+        Comparison comparison;
+        if (order == SortOrder.NAME) {
+            String[] keys = new String[count];
+            for (int i = first; i < count; i++) {
+                keys[i] = names.nameOf(index.idAt(i));
+            }
+            comparison = new NameComparison(keys);
+        } else {
+            long[] keys = new long[count];
+            for (int i = first; i < count; i++) {
+                keys[i] = keyOf(index, order, i);
+            }
+            comparison = new DescendingComparison(keys);
+        }
+        mergeSort(positions, new int[count], first, count, comparison);
+        return positions;
+    }
+
+    private static long keyOf(MediaIndex index, SortOrder order, int position) {
+        switch (order) {
+            case DATE_MODIFIED:
+                return index.dateModifiedAt(position);
+            case SIZE:
+                return index.sizeAt(position);
+            case DURATION:
+                return index.durationAt(position);
+            default:
+                return index.dateTakenAt(position);
+        }
+    }
+
+    /**
+     * Stable, so equal keys keep their positions in order.
+     */
+    private static void mergeSort(int[] positions, int[] buffer, int from, int to, Comparison comparison) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, comparison);
+        mergeSort(positions, buffer, middle, to, comparison);
+        if (comparison.compare(positions[middle - 1], positions[middle]) <= 0) {
+            // already in order, common for dates
+            return;
+        }
+        System.arraycopy(positions, from, buffer, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right == to || (left < middle && comparison.compare(buffer[left], buffer[right]) <= 0)) {
+                positions[i] = buffer[left++];
+            } else {
+                positions[i] = buffer[right++];
+            }
+        }
+    }
+
+    public interface Callback {
+        void onSorted(MediaIndex source, SortOrder order, MediaIndex sorted);
+    }
+
+    private interface Comparison {
+        int compare(int a, int b);
+    }
+
+    private static final class DescendingComparison implements Comparison {
+        private final long[] mKeys;
+
+        DescendingComparison(long[] keys) {
+            mKeys = keys;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+            long x = mKeys[a];
+            long y = mKeys[b];
+            return x > y ? -1 : (x == y ? 0 : 1);
+        }
+    }
+
+    private static final class NameComparison implements Comparison {
+        private final String[] mKeys;
+
+        NameComparison(String[] keys) {
+            mKeys = keys;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+            String x = mKeys[a];
+            String y = mKeys[b];
+            if (x == null || y == null) {
+                // unknown names last
+                return x == null ? (y == null ? 0 : 1) : -1;
+            }
+            return String.CASE_INSENSITIVE_ORDER.compare(x, y);
+        }
+    }
+}
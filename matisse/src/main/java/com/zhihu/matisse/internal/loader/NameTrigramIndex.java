@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.internal.utils.LongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Case insensitive trigram index over {@link MediaNames}: for each sequence of three characters, the ascending
+ * slots of the names containing it. A name containing a query contains every trigram of it, so intersecting
+ * their lists leaves few candidates to check. Not thread safe.
+ */
+final class NameTrigramIndex {
+    static final int GRAM_LENGTH = 3;
+    private static final int INITIAL_LISTS = 1024;
+    private static final int INITIAL_SLOTS = 4;
+
+    private final LongIntHashMap mLists = new LongIntHashMap(-1, INITIAL_LISTS);
+    private int[][] mSlots = new int[INITIAL_LISTS][];
+    private int[] mSizes = new int[INITIAL_LISTS];
+    private int mListCount;
+    private Object mLineage;
+    private int mIndexedCount;
+
+    /**
+     * Index the slots appended to {@code names} since the last update, or every slot if they are not
+     * {@link MediaNames#getLineage() appended} to the names indexed so far.
+     */
+    void update(MediaNames names) {
+        if (names.getLineage() != mLineage) {
+            mLists.clear();
+            Arrays.fill(mSlots, 0, mListCount, null);
+            mListCount = 0;
+            mLineage = names.getLineage();
+            mIndexedCount = 0;
+        }
+        for (int slot = mIndexedCount; slot < names.getCount(); slot++) {
+            String name = names.nameAt(slot);
+            if (name != null) {
+                add(slot, name);
+            }
+        }
+        mIndexedCount = names.getCount();
+    }
+
+    /**
+     * @param query at least {@link #GRAM_LENGTH} characters.
+     * @return ascending slots of the names containing every trigram of {@code query}, a superset of those
+     * containing {@code query}.
+     */
+    int[] candidatesOf(String query) {
+        int gramCount = query.length() - GRAM_LENGTH + 1;
+        int[] lists = new int[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            int list = mLists.get(gramAt(query, i));
+            if (list == -1) {
+                return new int[0];
+            }
+            lists[i] = list;
+        }
+        // the shortest list bounds the result, narrow it by the others
+        int shortest = 0;
+        for (int i = 1; i < gramCount; i++) {
+            if (mSizes[lists[i]] < mSizes[lists[shortest]]) {
+                shortest = i;
+            }
+        }
+        int[] result = Arrays.copyOf(mSlots[lists[shortest]], mSizes[lists[shortest]]);
+        int count = result.length;
+        for (int i = 0; i < gramCount && count > 0; i++) {
+            if (i != shortest) {
+                count = retain(result, count, mSlots[lists[i]], mSizes[lists[i]]);
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void add(int slot, String name) {
+        for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+            long gram = gramAt(name, i);
+            int list = mLists.get(gram);
+            if (list == -1) {
+                list = addList(gram);
+            }
+            int[] slots = mSlots[list];
+            int size = mSizes[list];
+            if (size > 0 && slots[size - 1] == slot) {
+                // trigram repeated in the name
+                continue;
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+                mSlots[list] = slots;
+            }
+            slots[size] = slot;
+            mSizes[list] = size + 1;
+        }
+    }
+
+    private int addList(long gram) {
+        if (mListCount == mSlots.length) {
+            mSlots = Arrays.copyOf(mSlots, mListCount * 2);
+            mSizes = Arrays.copyOf(mSizes, mListCount * 2);
+        }
+        int list = mListCount++;
+        mSlots[list] = new int[INITIAL_SLOTS];
+        mSizes[list] = 0;
+        mLists.put(gram, list);
+        return list;
+    }
+
+    /**
+     * Keep the first {@code count} slots of {@code result} that are also in {@code slots}, both ascending.
+     *
+     * @return number of slots kept, at the start of {@code result}.
+     */
+    private static int retain(int[] result, int count, int[] slots, int size) {
+        int kept = 0;
+        int from = 0;
+        for (int i = 0; i < count && from < size; i++) {
+            int found = Arrays.binarySearch(slots, from, size, result[i]);
+            if (found >= 0) {
+                result[kept++] = result[i];
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return kept;
+    }
+
+    private static long gramAt(String text, int offset) {
+        return (long) fold(text.charAt(offset)) << 32
+                | (long) fold(text.charAt(offset + 1)) << 16
+                | fold(text.charAt(offset + 2));
+    }
+
+    // same characters as String#regionMatches ignoring case, which also equates those with one upper case, like
+    // the two lower case Greek sigmas
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
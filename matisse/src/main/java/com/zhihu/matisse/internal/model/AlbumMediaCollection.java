@@ -17,7 +17,6 @@
 package com.zhihu.matisse.internal.model;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
@@ -26,20 +25,23 @@ import android.support.v4.app.LoaderManager;
 import android.support.v4.content.Loader;
 
 import com.zhihu.matisse.internal.entity.Album;
+import com.zhihu.matisse.internal.entity.MediaIndex;
 import com.zhihu.matisse.internal.loader.MediaLoader;
+import com.zhihu.matisse.internal.loader.MediaPageLoader;
 
 import java.lang.ref.WeakReference;
 
-public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Cursor> {
+public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<MediaIndex> {
     private static final int LOADER_ID = 2;
     private static final String ARGS_ALBUM = "args_album";
     private static final String ARGS_ENABLE_CAPTURE = "args_enable_capture";
+    private static final String ARGS_PAGE_SIZE = "args_page_size";
     private WeakReference<Context> mContext;
     private LoaderManager mLoaderManager;
     private AlbumMediaCallbacks mCallbacks;
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<MediaIndex> onCreateLoader(int id, Bundle args) {
         Context context = mContext.get();
         if (context == null) {
             return null;
@@ -50,28 +52,36 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
             return null;
         }
 
-        return MediaLoader.newInstance(context, album,
-                album.isAll() && args.getBoolean(ARGS_ENABLE_CAPTURE, false));
+        boolean enableCapture = album.isAll() && args.getBoolean(ARGS_ENABLE_CAPTURE, false);
+        int pageSize = args.getInt(ARGS_PAGE_SIZE, 0);
+        if (pageSize > 0) {
+            return MediaPageLoader.newInstance(context, album, enableCapture, pageSize);
+        }
+        return MediaLoader.newInstance(context, album, enableCapture);
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onLoadFinished(Loader<MediaIndex> loader, MediaIndex data) {
         Context context = mContext.get();
         if (context == null) {
             return;
         }
 
-        mCallbacks.onAlbumMediaLoad(data);
+        if (mCallbacks != null) {
+            mCallbacks.onAlbumMediaLoad(data);
+        }
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<MediaIndex> loader) {
         Context context = mContext.get();
         if (context == null) {
             return;
         }
 
-        mCallbacks.onAlbumMediaReset();
+        if (mCallbacks != null) {
+            mCallbacks.onAlbumMediaReset();
+        }
     }
 
     public void onCreate(@NonNull FragmentActivity context, @NonNull AlbumMediaCallbacks callbacks) {
@@ -80,6 +90,19 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
         mCallbacks = callbacks;
     }
 
+    /**
+     * Start loading {@code target} before anything is there to show it, e.g. while the album list is still
+     * loading. The next {@link #load} made in the same activity takes the loader over, with the result delivered
+     * as soon as it is ready, so it must ask for the same album, capture item and page size.
+     */
+    public static void preload(@NonNull FragmentActivity context, @NonNull Album target, boolean enableCapture,
+                               int pageSize) {
+        AlbumMediaCollection collection = new AlbumMediaCollection();
+        collection.mContext = new WeakReference<Context>(context);
+        collection.mLoaderManager = context.getSupportLoaderManager();
+        collection.load(target, enableCapture, pageSize);
+    }
+
     public void onDestroy() {
         mLoaderManager.destroyLoader(LOADER_ID);
         mCallbacks = null;
@@ -90,15 +113,33 @@ public class AlbumMediaCollection implements LoaderManager.LoaderCallbacks<Curso
     }
 
     public void load(@Nullable Album target, boolean enableCapture) {
+        load(target, enableCapture, 0);
+    }
+
+    /**
+     * @param pageSize rows per page, or 0 to load the whole album in one query.
+     */
+    public void load(@Nullable Album target, boolean enableCapture, int pageSize) {
         Bundle args = new Bundle();
         args.putParcelable(ARGS_ALBUM, target);
         args.putBoolean(ARGS_ENABLE_CAPTURE, enableCapture);
+        args.putInt(ARGS_PAGE_SIZE, pageSize);
         mLoaderManager.initLoader(LOADER_ID, args, this);
     }
 
+    /**
+     * Append the next page when loading in pages, no-op otherwise.
+     */
+    public void loadNextPage() {
+        Loader<MediaIndex> loader = mLoaderManager.getLoader(LOADER_ID);
+        if (loader instanceof MediaPageLoader) {
+            ((MediaPageLoader) loader).loadNextPage();
+        }
+    }
+
     public interface AlbumMediaCallbacks {
 
-        void onAlbumMediaLoad(Cursor cursor);
+        void onAlbumMediaLoad(MediaIndex index);
 
         void onAlbumMediaReset();
     }
@@ -56,6 +56,8 @@ public class SelectedItemCollection {
     public static final int COLLECTION_MIXED = COLLECTION_IMAGE | COLLECTION_VIDEO;
     private final Context mContext;
     private Set<Item> mItems;
+    // ids of mItems in selection order, so that the grid can look up a checked number without an Item
+    private long[] mSelectedIds = new long[0];
     private int mCollectionType = COLLECTION_UNDEFINED;
 
     public SelectedItemCollection(Context context) {
@@ -70,10 +72,12 @@ public class SelectedItemCollection {
             mItems = new LinkedHashSet<>(saved);
             mCollectionType = bundle.getInt(STATE_COLLECTION_TYPE, COLLECTION_UNDEFINED);
         }
+        updateSelectedIds();
     }
 
     public void setDefaultSelection(List<Item> uris) {
         mItems.addAll(uris);
+        updateSelectedIds();
     }
 
     public void onSaveInstanceState(Bundle outState) {
@@ -98,6 +102,7 @@ public class SelectedItemCollection {
         }
 
         boolean added = mItems.add(item);
+        updateSelectedIds();
 
         if (added) {
             if (mCollectionType == COLLECTION_UNDEFINED) {
@@ -122,6 +127,7 @@ public class SelectedItemCollection {
     public boolean remove(Item item) {
         boolean removed = mItems.remove(item);
         if (removed) {
+            updateSelectedIds();
             if (mItems.size() == 0) {
                 mCollectionType = COLLECTION_UNDEFINED;
             } else {
@@ -141,6 +147,7 @@ public class SelectedItemCollection {
         }
         mItems.clear();
         mItems.addAll(items);
+        updateSelectedIds();
     }
 
 
@@ -255,7 +262,28 @@ public class SelectedItemCollection {
     }
 
     public int checkedNumOf(Item item) {
-        int index = new ArrayList<>(mItems).indexOf(item);
-        return index == -1 ? MediaGrid.UNCHECKED : index + 1;
+        return checkedNumOf(item.id);
+    }
+
+    /**
+     * Same as {@link #checkedNumOf(Item)} but allocation free, for binding grid cells.
+     */
+    public int checkedNumOf(long id) {
+        long[] ids = mSelectedIds;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i + 1;
+            }
+        }
+        return MediaGrid.UNCHECKED;
+    }
+
+    private void updateSelectedIds() {
+        long[] ids = new long[mItems.size()];
+        int i = 0;
+        for (Item item : mItems) {
+            ids[i++] = item.id;
+        }
+        mSelectedIds = ids;
     }
 }
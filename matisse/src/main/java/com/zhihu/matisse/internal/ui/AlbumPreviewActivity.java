@@ -15,12 +15,12 @@
  */
 package com.zhihu.matisse.internal.ui;
 
-import android.database.Cursor;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
 import com.zhihu.matisse.internal.model.AlbumMediaCollection;
 import com.zhihu.matisse.internal.ui.adapter.PreviewPagerAdapter;
 
@@ -56,10 +56,10 @@ public class AlbumPreviewActivity extends BasePreviewActivity implements
     }
 
     @Override
-    public void onAlbumMediaLoad(Cursor cursor) {
-        List<Item> items = new ArrayList<>();
-        while (cursor.moveToNext()) {
-            items.add(Item.valueOf(cursor));
+    public void onAlbumMediaLoad(MediaIndex index) {
+        List<Item> items = new ArrayList<>(index.getCount());
+        for (int i = 0; i < index.getCount(); i++) {
+            items.add(index.itemAt(i));
         }
         PreviewPagerAdapter adapter = (PreviewPagerAdapter) mPager.getAdapter();
         adapter.addAll(items);
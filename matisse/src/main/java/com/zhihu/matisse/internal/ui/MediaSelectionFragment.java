@@ -16,41 +16,95 @@
 package com.zhihu.matisse.internal.ui;
 
 import android.content.Context;
-import android.database.Cursor;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
+import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.internal.entity.Album;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.MediaSections;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.loader.AlbumAggregator;
+import com.zhihu.matisse.internal.loader.MediaSearcher;
+import com.zhihu.matisse.internal.loader.MediaSectioner;
+import com.zhihu.matisse.internal.loader.MediaSorter;
 import com.zhihu.matisse.internal.model.AlbumMediaCollection;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.adapter.MediaAdapter;
 import com.zhihu.matisse.internal.ui.widget.GridSpacingItemDecoration;
+import com.zhihu.matisse.internal.ui.widget.MediaFastScroller;
 import com.zhihu.matisse.internal.utils.UIUtils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MediaSelectionFragment extends Fragment implements
         AlbumMediaCollection.AlbumMediaCallbacks,
-        MediaAdapter.OnMediaClickListener {
+        MediaAdapter.OnMediaClickListener, MediaSorter.Callback, MediaSearcher.Callback,
+        MediaSectioner.Callback {
 
     public static final String EXTRA_ALBUM = "extra_album";
+    public static final String EXTRA_SORT_ORDER = "extra_sort_order";
+    public static final String EXTRA_QUERY = "extra_query";
+    // fraction of a page left below the last visible row when the next page is requested
+    private static final float PAGE_PREFETCH_RATIO = 0.5f;
+    // scroll speeds of a fling, in dp per millisecond, above which thumbnail loading pauses and below which it
+    // resumes; apart so that a fling slowing down around one speed does not toggle it
+    private static final float PAUSE_SPEED = 3f;
+    private static final float RESUME_SPEED = 1f;
+    // longer gaps between scroll events do not tell the speed
+    private static final long MAX_SPEED_SAMPLE_MS = 100;
+    // rows past the visible ones whose thumbnails are loaded ahead of the scroll
+    private static final int PREFETCH_ROWS = 3;
 
     private final AlbumMediaCollection mAlbumMediaCollection = new AlbumMediaCollection();
     private RecyclerView mRecyclerView;
+    private MediaFastScroller mFastScroller;
+    private FlingPauser mFlingPauser;
     private MediaAdapter mAdapter;
     private SelectionProvider mSelectionProvider;
     private MediaAdapter.OnMediaClickListener mOnMediaClickListener;
+    // complete "All" index loaded by this fragment, the source of albums shown without a query
+    private MediaIndex mAllIndex;
+    // album shown through a view of mAllIndex, null while showing what was loaded
+    private Album mShownAlbum;
+    private AlbumAggregator mAggregator;
+    // views of mAllIndex by bucket id, reused so that the sorter's cache keyed by index finds them again
+    private final LongSparseArray<MediaIndex> mAlbumViews = new LongSparseArray<>();
+    private MediaIndex mAlbumViewsSource;
+    private AlbumAggregator mAlbumViewsAggregator;
+    private MediaSorter mSorter;
+    private MediaSearcher mSearcher;
+    // null without date sections
+    private MediaSectioner mSectioner;
+    // index shown in the order of the query, the grid shows it sorted by mSortOrder and narrowed by mQuery
+    private MediaIndex mShownIndex;
+    private MediaIndex mSortedIndex;
+    private SortOrder mSortOrder;
+    private String mQuery;
+    // scroll to the top once what is being sorted or searched is shown
+    private boolean mScrollPending;
 
-    public static MediaSelectionFragment newInstance(Album album) {
+    /**
+     * @param query display name searched, empty for none.
+     */
+    public static MediaSelectionFragment newInstance(Album album, SortOrder sortOrder, String query) {
         MediaSelectionFragment fragment = new MediaSelectionFragment();
         Bundle args = new Bundle();
         args.putParcelable(EXTRA_ALBUM, album);
+        args.putSerializable(EXTRA_SORT_ORDER, sortOrder);
+        args.putString(EXTRA_QUERY, query);
         fragment.setArguments(args);
         return fragment;
     }
@@ -79,38 +133,87 @@ public class MediaSelectionFragment extends Fragment implements
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recyclerview);
+        mFastScroller = (MediaFastScroller) view.findViewById(R.id.fast_scroller);
     }
 
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
         super.onActivityCreated(savedInstanceState);
         Album album = getArguments().getParcelable(EXTRA_ALBUM);
+        mSortOrder = (SortOrder) getArguments().getSerializable(EXTRA_SORT_ORDER);
+        mQuery = getArguments().getString(EXTRA_QUERY, "");
+        mSorter = new MediaSorter(getContext());
+        mSearcher = new MediaSearcher(getContext());
 
         mAdapter = new MediaAdapter(getContext(),
                 mSelectionProvider.provideSelectedItemCollection(), mRecyclerView);
         mAdapter.setOnMediaClickListener(this);
         mRecyclerView.setHasFixedSize(true);
 
-        int spanCount;
         SelectionSpec selectionSpec = SelectionSpec.getInstance();
-        if (selectionSpec.gridExpectedSize > 0) {
-            spanCount = UIUtils.spanCount(getContext(), selectionSpec.gridExpectedSize);
-        } else {
-            spanCount = selectionSpec.spanCount;
+        int spanCount = UIUtils.gridSpanCount(getContext());
+        GridLayoutManager layoutManager = new GridLayoutManager(getContext(), spanCount);
+        if (selectionSpec.dateSection != null) {
+            final int columns = spanCount;
+            mSectioner = new MediaSectioner(selectionSpec.dateSection);
+            layoutManager.setSpanSizeLookup(new GridLayoutManager.SpanSizeLookup() {
+                @Override
+                public int getSpanSize(int position) {
+                    // headers take a whole row
+                    return mAdapter.indexPositionOf(position) == -1 ? columns : 1;
+                }
+
+                @Override
+                public int getSpanIndex(int position, int spanCount) {
+                    MediaSections sections = mAdapter.getSections();
+                    return sections == null ? position % spanCount : sections.spanIndexOf(position, spanCount);
+                }
+            });
+            mFastScroller.attachTo(mRecyclerView);
         }
-        mRecyclerView.setLayoutManager(new GridLayoutManager(getContext(), spanCount));
+        mRecyclerView.setLayoutManager(layoutManager);
 
         int spacing = getResources().getDimensionPixelSize(R.dimen.media_grid_spacing);
         mRecyclerView.addItemDecoration(new GridSpacingItemDecoration(spanCount, spacing, true));
         mRecyclerView.setAdapter(mAdapter);
+        // only for engines implementing the optional hooks
+        ImageEngine engine = selectionSpec.imageEngine;
+        if (engine instanceof ImageEngine.Controllable) {
+            mFlingPauser = new FlingPauser(getContext(), (ImageEngine.Controllable) engine);
+            mRecyclerView.addOnScrollListener(mFlingPauser);
+        }
+        if (engine instanceof ImageEngine.Preloadable) {
+            mRecyclerView.addOnScrollListener(new ThumbnailPrefetcher(getContext(), mAdapter, mFlingPauser,
+                    (ImageEngine.Preloadable) engine, UIUtils.thumbnailSize(getContext(), spanCount)));
+        }
         mAlbumMediaCollection.onCreate(getActivity(), this);
-        mAlbumMediaCollection.load(album, selectionSpec.capture);
+        if (selectionSpec.pagedLoadingEnabled()) {
+            final int prefetchDistance = Math.max(spanCount, (int) (selectionSpec.pageSize * PAGE_PREFETCH_RATIO));
+            mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+                @Override
+                public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                    GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+                    int lastVisible = layoutManager.findLastVisibleItemPosition();
+                    if (lastVisible != RecyclerView.NO_POSITION
+                            && lastVisible >= mAdapter.getItemCount() - prefetchDistance) {
+                        mAlbumMediaCollection.loadNextPage();
+                    }
+                }
+            });
+            mAlbumMediaCollection.load(album, selectionSpec.capture, selectionSpec.pageSize);
+        } else {
+            mAlbumMediaCollection.load(album, selectionSpec.capture);
+        }
     }
 
     @Override
     public void onDestroyView() {
         super.onDestroyView();
         mAlbumMediaCollection.onDestroy();
+        if (mFlingPauser != null) {
+            // the engine outlives the grid
+            mFlingPauser.resume();
+        }
     }
 
     public void refreshMediaGrid() {
@@ -121,14 +224,205 @@ public class MediaSelectionFragment extends Fragment implements
         mAdapter.refreshSelection();
     }
 
+    /**
+     * Sort the grid by {@code order}, from memory once the order was computed for the media shown.
+     * Ignored while paging, pages are shown in the order they are loaded.
+     */
+    public void setSortOrder(SortOrder order) {
+        getArguments().putSerializable(EXTRA_SORT_ORDER, order);
+        if (mSortOrder == order) {
+            return;
+        }
+        mSortOrder = order;
+        if (mAdapter != null && !SelectionSpec.getInstance().pagedLoadingEnabled()) {
+            show(mShownIndex, true);
+        }
+    }
+
+    /**
+     * Only show the media whose display name contains {@code query}, case insensitive. Ignored while paging.
+     *
+     * @param query empty to show every media.
+     */
+    public void setQuery(String query) {
+        getArguments().putString(EXTRA_QUERY, query);
+        if (query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        if (mAdapter != null && mSortedIndex != null && !SelectionSpec.getInstance().pagedLoadingEnabled()) {
+            mScrollPending = true;
+            display(mSortedIndex);
+        }
+    }
+
+    /**
+     * Show {@code album} from the "All" index already loaded by this fragment, without querying the media store.
+     *
+     * @param aggregator positions of each album's items in the "All" album, from the current album list.
+     * @return false if this fragment cannot show the album from memory, e.g. it loaded another album, is paging,
+     * or the album list and the loaded index disagree.
+     */
+    public boolean showAlbum(Album album, AlbumAggregator aggregator) {
+        if (mAllIndex == null) {
+            return false;
+        }
+        if (album.isAll()) {
+            mShownAlbum = null;
+            mAggregator = null;
+            if (mShownIndex != mAllIndex) {
+                show(mAllIndex, true);
+            }
+            return true;
+        }
+        MediaIndex view = viewOf(album, aggregator);
+        if (view == null) {
+            return false;
+        }
+        boolean sameAlbum = mShownAlbum != null && mShownAlbum.getId().equals(album.getId());
+        mShownAlbum = album;
+        mAggregator = aggregator;
+        show(view, !sameAlbum);
+        return true;
+    }
+
+    // what was shown stays until sorted and searched
+    private void show(MediaIndex index, boolean scrollToTop) {
+        mShownIndex = index;
+        mScrollPending |= scrollToTop;
+        MediaIndex sorted = index == null || SelectionSpec.getInstance().pagedLoadingEnabled()
+                ? index : mSorter.getSorted(index, mSortOrder);
+        if (sorted == null) {
+            mSorter.sort(index, mSortOrder, this);
+        } else {
+            display(sorted);
+        }
+    }
+
+    @Override
+    public void onSorted(MediaIndex source, SortOrder order, MediaIndex sorted) {
+        if (source == mShownIndex && order == mSortOrder && mAdapter != null) {
+            display(sorted);
+        }
+    }
+
+    private void display(MediaIndex sorted) {
+        mSortedIndex = sorted;
+        if (sorted == null || mQuery.isEmpty() || SelectionSpec.getInstance().pagedLoadingEnabled()) {
+            mSearcher.cancel();
+            present(sorted);
+        } else {
+            mSearcher.search(sorted, mQuery, this);
+        }
+    }
+
+    @Override
+    public void onSearched(MediaIndex source, String query, MediaIndex result) {
+        if (source == mSortedIndex && query.equals(mQuery) && mAdapter != null) {
+            present(result);
+        }
+    }
+
+    private void present(MediaIndex index) {
+        mAdapter.swapIndex(index);
+        if (mScrollPending) {
+            mScrollPending = false;
+            mRecyclerView.scrollToPosition(0);
+        }
+        section(index);
+    }
+
+    // after the media are shown, sections only make sense in order of date taken
+    private void section(MediaIndex index) {
+        if (mSectioner == null) {
+            return;
+        }
+        if (index != null && mSortOrder == SortOrder.DATE_TAKEN) {
+            mSectioner.section(index, this);
+        } else {
+            mFastScroller.setSections(null);
+        }
+    }
+
     @Override
-    public void onAlbumMediaLoad(Cursor cursor) {
-        mAdapter.swapCursor(cursor);
+    public void onSectioned(MediaIndex index, MediaSections sections) {
+        if (mAdapter != null && mAdapter.getIndex() == index) {
+            mAdapter.setSections(sections);
+            mFastScroller.setSections(sections);
+        }
+    }
+
+    private MediaIndex viewOf(Album album, AlbumAggregator aggregator) {
+        long bucketId;
+        try {
+            bucketId = Long.parseLong(album.getId());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (mAllIndex != mAlbumViewsSource || aggregator != mAlbumViewsAggregator) {
+            mAlbumViews.clear();
+            mAlbumViewsSource = mAllIndex;
+            mAlbumViewsAggregator = aggregator;
+        }
+        MediaIndex cached = mAlbumViews.get(bucketId);
+        if (cached != null) {
+            return cached;
+        }
+        int bucket = aggregator.indexOfBucket(bucketId);
+        // the capture item is only part of the index
+        int offset = mAllIndex.getCount() - aggregator.getTotalCount();
+        if (bucket == -1 || offset < 0 || offset > 1 || (offset == 1 && !mAllIndex.isCapture(0))) {
+            return null;
+        }
+        int[] members = aggregator.getMembers(bucket);
+        for (int position : members) {
+            // both come from the same query but not the same run of it
+            if (mAllIndex.bucketIdAt(position + offset) != bucketId) {
+                return null;
+            }
+        }
+        MediaIndex view = mAllIndex.view(members, offset);
+        mAlbumViews.put(bucketId, view);
+        return view;
+    }
+
+    @Override
+    public void onAlbumMediaLoad(MediaIndex index) {
+        Album album = getArguments().getParcelable(EXTRA_ALBUM);
+        if (album.isAll() && !SelectionSpec.getInstance().pagedLoadingEnabled()) {
+            mAllIndex = index;
+            if (mShownAlbum != null) {
+                MediaIndex view = viewOf(mShownAlbum, mAggregator);
+                if (view != null) {
+                    show(view, false);
+                }
+                // otherwise keep the view until the album list catches up with the change
+                return;
+            }
+        }
+        if (index.isContinuationOf(mAdapter.getIndex())) {
+            mShownIndex = index;
+            mSortedIndex = index;
+            mAdapter.appendIndex(index);
+            section(index);
+        } else {
+            show(index, false);
+            // read the second page ahead of the first scroll
+            if (SelectionSpec.getInstance().pagedLoadingEnabled()) {
+                mAlbumMediaCollection.loadNextPage();
+            }
+        }
     }
 
     @Override
     public void onAlbumMediaReset() {
-        mAdapter.swapCursor(null);
+        mAllIndex = null;
+        mShownAlbum = null;
+        mAggregator = null;
+        mAlbumViews.clear();
+        mAlbumViewsSource = null;
+        mAlbumViewsAggregator = null;
+        show(null, false);
     }
 
 
@@ -142,4 +436,127 @@ public class MediaSelectionFragment extends Fragment implements
     public interface SelectionProvider {
         SelectedItemCollection provideSelectedItemCollection();
     }
+
+    /**
+     * Pause thumbnail loading while the grid is flung fast, so that the decoder is not busy with tiles only passed
+     * by, and resume it once the fling slows down, the grid is touched or it stops.
+     */
+    private static final class FlingPauser extends RecyclerView.OnScrollListener {
+        private final Context mContext;
+        private final ImageEngine.Controllable mEngine;
+        // in pixels per millisecond
+        private final float mPauseSpeed;
+        private final float mResumeSpeed;
+        private boolean mSettling;
+        private boolean mPaused;
+        private long mLastScrollTime;
+
+        FlingPauser(Context context, ImageEngine.Controllable engine) {
+            mContext = context;
+            mEngine = engine;
+            float density = context.getResources().getDisplayMetrics().density;
+            mPauseSpeed = PAUSE_SPEED * density;
+            mResumeSpeed = RESUME_SPEED * density;
+        }
+
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            mSettling = newState == RecyclerView.SCROLL_STATE_SETTLING;
+            if (!mSettling) {
+                resume();
+            }
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            long now = SystemClock.uptimeMillis();
+            long elapsed = now - mLastScrollTime;
+            mLastScrollTime = now;
+            if (elapsed <= 0 || elapsed > MAX_SPEED_SAMPLE_MS) {
+                return;
+            }
+            float speed = Math.abs(dy) / (float) elapsed;
+            if (!mPaused && mSettling && speed > mPauseSpeed) {
+                mPaused = true;
+                mEngine.pause(mContext);
+            } else if (mPaused && speed < mResumeSpeed) {
+                resume();
+            }
+        }
+
+        void resume() {
+            if (mPaused) {
+                mPaused = false;
+                mEngine.resume(mContext);
+            }
+        }
+
+        boolean isPaused() {
+            return mPaused;
+        }
+    }
+
+    /**
+     * Preload the thumbnails of the rows just past the visible ones in the direction of the scroll, nearest first,
+     * so that they are decoded by the time they scroll in. Nothing is preloaded while a fling pauses loading.
+     */
+    private static final class ThumbnailPrefetcher extends RecyclerView.OnScrollListener {
+        private final Context mContext;
+        private final MediaAdapter mAdapter;
+        private final FlingPauser mFlingPauser;
+        private final ImageEngine.Preloadable mEngine;
+        private final int mResize;
+        // first adapter position of the window last preloaded and the direction it was preloaded in
+        private int mWindowStart = RecyclerView.NO_POSITION;
+        private int mWindowDirection;
+
+        /**
+         * @param flingPauser null if the engine cannot pause.
+         */
+        ThumbnailPrefetcher(Context context, MediaAdapter adapter, FlingPauser flingPauser,
+                            ImageEngine.Preloadable engine, int resize) {
+            mContext = context;
+            mAdapter = adapter;
+            mFlingPauser = flingPauser;
+            mEngine = engine;
+            mResize = resize;
+        }
+
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            if (dy == 0) {
+                return;
+            }
+            if (mFlingPauser != null && mFlingPauser.isPaused()) {
+                // the engine drops preloads while paused, ask again once it resumes
+                mWindowStart = RecyclerView.NO_POSITION;
+                return;
+            }
+            MediaIndex index = mAdapter.getIndex();
+            GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            if (index == null || first == RecyclerView.NO_POSITION) {
+                return;
+            }
+            int direction = dy > 0 ? 1 : -1;
+            int start = direction > 0 ? last + 1 : first - 1;
+            if (start == mWindowStart && direction == mWindowDirection) {
+                return;
+            }
+            mWindowStart = start;
+            mWindowDirection = direction;
+            int count = layoutManager.getSpanCount() * PREFETCH_ROWS;
+            List<Uri> uris = new ArrayList<>(count);
+            for (int position = start; position >= 0 && position < mAdapter.getItemCount()
+                    && uris.size() < count; position += direction) {
+                int indexPosition = mAdapter.indexPositionOf(position);
+                // section headers and the capture item have no thumbnail, gifs may load differently
+                if (indexPosition != -1 && !index.isCapture(indexPosition) && !index.isGif(indexPosition)) {
+                    uris.add(index.uriAt(indexPosition));
+                }
+            }
+            mEngine.preload(mContext, mResize, uris);
+        }
+    }
 }
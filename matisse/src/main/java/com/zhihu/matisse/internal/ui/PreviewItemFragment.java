@@ -27,9 +27,12 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.internal.entity.Item;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.ui.widget.TiledImageViewTouch;
 import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
+import com.zhihu.matisse.internal.utils.UIUtils;
 
 import it.sephiroth.android.library.imagezoom.ImageViewTouch;
 import it.sephiroth.android.library.imagezoom.ImageViewTouchBase;
@@ -78,7 +81,7 @@ public class PreviewItemFragment extends Fragment {
             videoPlayButton.setVisibility(View.GONE);
         }
 
-        ImageViewTouch image = (ImageViewTouch) view.findViewById(R.id.image_view);
+        TiledImageViewTouch image = (TiledImageViewTouch) view.findViewById(R.id.image_view);
         image.setDisplayType(ImageViewTouchBase.DisplayType.FIT_TO_SCREEN);
 
         Point size = PhotoMetadataUtils.getBitmapSize(item.getContentUri(), getActivity());
@@ -86,8 +89,19 @@ public class PreviewItemFragment extends Fragment {
             SelectionSpec.getInstance().imageEngine.loadGifImage(getContext(), size.x, size.y, image,
                     item.getContentUri());
         } else {
-            SelectionSpec.getInstance().imageEngine.loadImage(getContext(), size.x, size.y, image,
-                    item.getContentUri());
+            ImageEngine engine = SelectionSpec.getInstance().imageEngine;
+            if (engine instanceof ImageEngine.ThumbnailPreviewable) {
+                // the grid's thumbnail of the item first, then the image
+                int thumbnailSize = UIUtils.thumbnailSize(getContext(), UIUtils.gridSpanCount(getContext()));
+                ((ImageEngine.ThumbnailPreviewable) engine).loadImageWithThumbnail(getContext(), thumbnailSize,
+                        size.x, size.y, image, item.getContentUri());
+            } else {
+                engine.loadImage(getContext(), size.x, size.y, image, item.getContentUri());
+            }
+            if (item.isImage()) {
+                // zoomed in past the screen sized image, the original is decoded by region
+                image.setTileSource(item.getContentUri());
+            }
         }
     }
 
@@ -23,19 +23,21 @@ import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.CursorAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.UIUtils;
 
-import java.io.File;
-
-public class AlbumsAdapter extends CursorAdapter {
+public class AlbumsAdapter extends CursorAdapter implements AbsListView.RecyclerListener {
 
     private final Drawable mPlaceholder;
+    private int mCoverSize;
 
     public AlbumsAdapter(Context context, Cursor c, boolean autoRequery) {
         super(context, c, autoRequery);
@@ -66,9 +68,30 @@ public class AlbumsAdapter extends CursorAdapter {
         ((TextView) view.findViewById(R.id.album_name)).setText(album.getDisplayName(context));
         ((TextView) view.findViewById(R.id.album_media_count)).setText(String.valueOf(album.getCount()));
 
-        // do not need to load animated Gif
-        SelectionSpec.getInstance().imageEngine.loadThumbnail(context, context.getResources().getDimensionPixelSize(R
-                        .dimen.media_grid_size), mPlaceholder,
-                (ImageView) view.findViewById(R.id.album_cover), Uri.fromFile(new File(album.getCoverPath())));
+        ImageView cover = (ImageView) view.findViewById(R.id.album_cover);
+        Uri coverUri = album.getCoverUri();
+        if (coverUri == null) {
+            cover.setImageDrawable(mPlaceholder);
+            return;
+        }
+        // do not need to load animated Gif; the uri and size are those of the grid's thumbnail of the same item
+        SelectionSpec.getInstance().imageEngine.loadThumbnail(context, getCoverSize(context), mPlaceholder,
+                cover, coverUri);
+    }
+
+    @Override
+    public void onMovedToScrapHeap(View view) {
+        ImageView cover = (ImageView) view.findViewById(R.id.album_cover);
+        ImageEngine engine = SelectionSpec.getInstance().imageEngine;
+        if (engine instanceof ImageEngine.Controllable) {
+            ((ImageEngine.Controllable) engine).clear(view.getContext(), cover);
+        }
+    }
+
+    private int getCoverSize(Context context) {
+        if (mCoverSize == 0) {
+            mCoverSize = UIUtils.thumbnailSize(context, UIUtils.gridSpanCount(context));
+        }
+        return mCoverSize;
     }
 }
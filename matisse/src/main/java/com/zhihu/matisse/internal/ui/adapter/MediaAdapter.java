@@ -17,7 +17,6 @@ package com.zhihu.matisse.internal.ui.adapter;
 
 import android.content.Context;
 import android.content.res.TypedArray;
-import android.database.Cursor;
 import android.graphics.drawable.Drawable;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -25,16 +24,20 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
+import android.widget.TextView;
 
 import com.zhihu.matisse.R;
 import com.zhihu.matisse.internal.entity.IncapableCause;
 import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.MediaSections;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.widget.MediaGrid;
+import com.zhihu.matisse.internal.utils.UIUtils;
 
 public class MediaAdapter extends
-        RecyclerViewCursorAdapter<RecyclerView.ViewHolder> implements
+        RecyclerViewIndexAdapter<RecyclerView.ViewHolder> implements
         MediaGrid.OnMediaGridClickListener {
 
     private static final int VIEW_TYPE_CAPTURE = 0x01;
@@ -52,7 +55,6 @@ public class MediaAdapter extends
     private OnMediaClickListener onMediaClickListener;
 
     public MediaAdapter(Context context, SelectedItemCollection selectedCollection, RecyclerView recyclerView) {
-        super(null);
         mSelectionSpec = SelectionSpec.getInstance();
         mSelectedCollection = selectedCollection;
 
@@ -65,8 +67,8 @@ public class MediaAdapter extends
     }
 
     @Override
-    public int getItemViewType(int position, Cursor cursor) {
-        return Item.valueOf(cursor).isCapture() ? VIEW_TYPE_CAPTURE : VIEW_TYPE_MEDIA;
+    protected int getItemViewType(MediaIndex index, int position) {
+        return index.isCapture(position) ? VIEW_TYPE_CAPTURE : VIEW_TYPE_MEDIA;
     }
 
     @Override
@@ -74,6 +76,11 @@ public class MediaAdapter extends
         if (viewType == VIEW_TYPE_CAPTURE) {
             View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_capture, parent, false);
             CaptureViewHolder holder = new CaptureViewHolder(v);
+            if (mSelectionSpec.onlyShowImages()) {
+                holder.ivHint.setImageDrawable(context.getResources().getDrawable(R.drawable.camera));
+            } else if (mSelectionSpec.onlyShowVideos()) {
+                holder.ivHint.setImageDrawable(context.getResources().getDrawable(R.drawable.video));
+            }
             holder.itemView.setOnClickListener(new View.OnClickListener() {
                 @Override
                 public void onClick(View v) {
@@ -85,37 +92,47 @@ public class MediaAdapter extends
             return holder;
         } else if (viewType == VIEW_TYPE_MEDIA) {
             View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_media_grid, parent, false);
-            return new MediaViewHolder(v);
+            MediaViewHolder holder = new MediaViewHolder(v);
+            // none of this depends on the position, set it up once instead of on every bind
+            holder.mMediaGrid.preBindMedia(new MediaGrid.PreBindInfo(
+                    getImageResize(parent.getContext()),
+                    mPlaceholder,
+                    holder
+            ));
+            holder.mMediaGrid.setOnMediaGridClickListener(this);
+            return holder;
+        } else if (viewType == VIEW_TYPE_SECTION) {
+            View v = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_section_header, parent, false);
+            return new SectionViewHolder(v);
         }
         return null;
     }
 
     @Override
-    protected void onBindViewHolder(final RecyclerView.ViewHolder holder, Cursor cursor) {
-        if (holder instanceof CaptureViewHolder) {
-            CaptureViewHolder captureViewHolder = (CaptureViewHolder) holder;
-            if(mSelectionSpec.onlyShowImages()){
-                captureViewHolder.ivHint.setImageDrawable(context.getResources().getDrawable(R.drawable.camera));
-            } else if (mSelectionSpec.onlyShowVideos()){
-                captureViewHolder.ivHint.setImageDrawable(context.getResources().getDrawable(R.drawable.video));
-            }
-        } else if (holder instanceof MediaViewHolder) {
+    protected void onBindViewHolder(final RecyclerView.ViewHolder holder, MediaIndex index, int position) {
+        // the capture item is fully set up when created
+        if (holder instanceof MediaViewHolder) {
             MediaViewHolder mediaViewHolder = (MediaViewHolder) holder;
 
-            final Item item = Item.valueOf(cursor);
-            mediaViewHolder.mMediaGrid.preBindMedia(new MediaGrid.PreBindInfo(
-                    getImageResize(mediaViewHolder.mMediaGrid.getContext()),
-                    mPlaceholder,
-                    holder
-            ));
-            mediaViewHolder.mMediaGrid.bindMedia(item);
-            mediaViewHolder.mMediaGrid.setOnMediaGridClickListener(this);
-            setCheckStatus(item, mediaViewHolder.mMediaGrid);
+            mediaViewHolder.mMediaGrid.bindMedia(index, position);
+            setCheckStatus(mediaViewHolder.mMediaGrid);
         }
     }
 
-    private void setCheckStatus(Item item, MediaGrid mediaGrid) {
-        int checkedNum = mSelectedCollection.checkedNumOf(item);
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        if (holder instanceof MediaViewHolder) {
+            ((MediaViewHolder) holder).mMediaGrid.unbindMedia();
+        }
+    }
+
+    @Override
+    protected void onBindSectionViewHolder(RecyclerView.ViewHolder holder, MediaSections sections, int section) {
+        ((SectionViewHolder) holder).mTitle.setText(UIUtils.formatSectionKey(context, sections.getKey(section)));
+    }
+
+    private void setCheckStatus(MediaGrid mediaGrid) {
+        int checkedNum = mSelectedCollection.checkedNumOf(mediaGrid.getMediaId());
         mediaGrid.setCheckedNum(checkedNum);
     }
 
@@ -126,11 +143,11 @@ public class MediaAdapter extends
         if (checkedNum == MediaGrid.UNCHECKED) {
             if (assertAddSelection(holder.itemView.getContext(), item)) {
                 mSelectedCollection.add(item);
-                notifyDataSetChanged();
+                refreshSelection();
             }
         } else {
             mSelectedCollection.remove(item);
-            notifyDataSetChanged();
+            refreshSelection();
         }
 
         onMediaClickListener.onMediaClick();
@@ -149,12 +166,10 @@ public class MediaAdapter extends
         if (first == -1 || last == -1) {
             return;
         }
-        Cursor cursor = getCursor();
         for (int i = first; i <= last; i++) {
-            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(first);
+            RecyclerView.ViewHolder holder = mRecyclerView.findViewHolderForAdapterPosition(i);
             if (holder instanceof MediaViewHolder) {
-                if (cursor.moveToPosition(i)) {
-                }
+                setCheckStatus(((MediaViewHolder) holder).mMediaGrid);
             }
         }
     }
@@ -163,11 +178,7 @@ public class MediaAdapter extends
         if (mImageResize == 0) {
             RecyclerView.LayoutManager lm = mRecyclerView.getLayoutManager();
             int spanCount = ((GridLayoutManager) lm).getSpanCount();
-            int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-            int availableWidth = screenWidth - context.getResources().getDimensionPixelSize(
-                    R.dimen.media_grid_spacing) * (spanCount - 1);
-            mImageResize = availableWidth / spanCount;
-            mImageResize = (int) (mImageResize * mSelectionSpec.thumbnailScale);
+            mImageResize = UIUtils.thumbnailSize(context, spanCount);
         }
         return mImageResize;
     }
@@ -194,6 +205,16 @@ public class MediaAdapter extends
         }
     }
 
+    private static class SectionViewHolder extends RecyclerView.ViewHolder {
+
+        private TextView mTitle;
+
+        SectionViewHolder(View itemView) {
+            super(itemView);
+            mTitle = (TextView) itemView;
+        }
+    }
+
     private static class CaptureViewHolder extends RecyclerView.ViewHolder {
 
         private ImageView ivHint;
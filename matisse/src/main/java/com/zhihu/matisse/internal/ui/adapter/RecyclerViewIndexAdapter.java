@@ -0,0 +1,172 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.adapter;
+
+import android.support.v7.widget.RecyclerView;
+
+import com.zhihu.matisse.internal.entity.MediaIndex;
+import com.zhihu.matisse.internal.entity.MediaSections;
+
+/**
+ * Adapter backed by a {@link MediaIndex}; positions are read straight from its columns. With
+ * {@link #setSections(MediaSections) sections}, a header is shown before each of them and adapter positions are
+ * mapped to positions of the index.
+ */
+public abstract class RecyclerViewIndexAdapter<VH extends RecyclerView.ViewHolder> extends
+        RecyclerView.Adapter<VH> {
+
+    /**
+     * View type of section headers.
+     */
+    public static final int VIEW_TYPE_SECTION = 0x100;
+
+    private MediaIndex mIndex = MediaIndex.empty();
+    private MediaSections mSections;
+
+    RecyclerViewIndexAdapter() {
+        setHasStableIds(true);
+    }
+
+    protected abstract void onBindViewHolder(VH holder, MediaIndex index, int position);
+
+    protected abstract int getItemViewType(MediaIndex index, int position);
+
+    protected abstract void onBindSectionViewHolder(VH holder, MediaSections sections, int section);
+
+    @Override
+    public void onBindViewHolder(VH holder, int position) {
+        if (mSections == null) {
+            onBindViewHolder(holder, mIndex, position);
+            return;
+        }
+        int indexPosition = mSections.indexPositionOf(position);
+        if (indexPosition == -1) {
+            onBindSectionViewHolder(holder, mSections, mSections.sectionAt(position));
+        } else {
+            onBindViewHolder(holder, mIndex, indexPosition);
+        }
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        if (mSections == null) {
+            return getItemViewType(mIndex, position);
+        }
+        int indexPosition = mSections.indexPositionOf(position);
+        return indexPosition == -1 ? VIEW_TYPE_SECTION : getItemViewType(mIndex, indexPosition);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSections == null ? mIndex.getCount() : mSections.getListCount(mIndex.getCount());
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (mSections == null) {
+            return mIndex.idAt(position);
+        }
+        int indexPosition = mSections.indexPositionOf(position);
+        // keys are dates or -1, far from any media id
+        return indexPosition == -1
+                ? Long.MIN_VALUE + 1 + mSections.getKey(mSections.sectionAt(position)) : mIndex.idAt(indexPosition);
+    }
+
+    /**
+     * Show a header before each section, or none if null.
+     *
+     * @param sections computed from the current index, or from an index it continues.
+     */
+    public void setSections(MediaSections sections) {
+        if (sections != mSections) {
+            mSections = sections;
+            notifyDataSetChanged();
+        }
+    }
+
+    public MediaSections getSections() {
+        return mSections;
+    }
+
+    /**
+     * @return position in the index of the item at {@code adapterPosition}, or -1 for a header.
+     */
+    public int indexPositionOf(int adapterPosition) {
+        return mSections == null ? adapterPosition : mSections.indexPositionOf(adapterPosition);
+    }
+
+    public int adapterPositionOf(int indexPosition) {
+        return mSections == null ? indexPosition : mSections.listPositionOf(indexPosition);
+    }
+
+    /**
+     * Replace the index, notifying only the removed and inserted items when it is a
+     * {@link MediaIndex#isDeltaOf(MediaIndex) delta} of the current one.
+     */
+    public void swapIndex(MediaIndex newIndex) {
+        if (newIndex == mIndex) {
+            return;
+        }
+        if (mSections != null) {
+            // the sections of the new index come later, positions of the old ones do not apply
+            mSections = null;
+            mIndex = newIndex != null ? newIndex : MediaIndex.empty();
+            notifyDataSetChanged();
+            return;
+        }
+
+        if (newIndex != null && newIndex.isDeltaOf(mIndex)) {
+            mIndex = newIndex;
+            // removals from the bottom up keep the positions still to remove valid
+            int[] removed = newIndex.getRemovedPositions();
+            for (int i = removed.length - 1; i >= 0; i--) {
+                notifyItemRemoved(removed[i]);
+            }
+            for (int position : newIndex.getInsertedPositions()) {
+                notifyItemInserted(position);
+            }
+        } else if (newIndex != null) {
+            mIndex = newIndex;
+            notifyDataSetChanged();
+        } else {
+            int count = getItemCount();
+            mIndex = MediaIndex.empty();
+            notifyItemRangeRemoved(0, count);
+        }
+    }
+
+    /**
+     * Swap in an index that {@link MediaIndex#isContinuationOf(MediaIndex) continues} the current one,
+     * notifying only the appended items. They join the last section until sections are set for the new index.
+     */
+    public void appendIndex(MediaIndex newIndex) {
+        if (newIndex == null || !newIndex.isContinuationOf(mIndex)) {
+            swapIndex(newIndex);
+            return;
+        }
+        int previousCount = getItemCount();
+        newIndex.inheritUris(mIndex);
+        mIndex = newIndex;
+        int count = getItemCount();
+        if (count > previousCount) {
+            notifyItemRangeInserted(previousCount, count - previousCount);
+        }
+    }
+
+    public MediaIndex getIndex() {
+        return mIndex;
+    }
+}
@@ -24,6 +24,7 @@ import android.graphics.drawable.Drawable;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.ListPopupWindow;
 import android.view.View;
+import android.widget.AbsListView;
 import android.widget.AdapterView;
 import android.widget.CursorAdapter;
 import android.widget.TextView;
@@ -118,6 +119,10 @@ public class AlbumsSpinner {
                         mAdapter.getCount() > MAX_SHOWN_COUNT ? itemHeight * MAX_SHOWN_COUNT
                                 : itemHeight * mAdapter.getCount());
                 mListPopupWindow.show();
+                // the list is created when first shown
+                if (mAdapter instanceof AbsListView.RecyclerListener) {
+                    mListPopupWindow.getListView().setRecyclerListener((AbsListView.RecyclerListener) mAdapter);
+                }
             }
         });
         mSelected.setOnTouchListener(mListPopupWindow.createDragToOpenListener(mSelected));
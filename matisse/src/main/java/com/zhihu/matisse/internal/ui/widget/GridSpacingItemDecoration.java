@@ -16,6 +16,7 @@
 package com.zhihu.matisse.internal.ui.widget;
 
 import android.graphics.Rect;
+import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.View;
 
@@ -36,23 +37,33 @@ public class GridSpacingItemDecoration extends RecyclerView.ItemDecoration {
                                RecyclerView.State state) {
         int position = parent.getChildAdapterPosition(view); // item position
         int column = position % mSpanCount; // item column
+        int spanSize = 1;
+        RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
+        if (layoutManager instanceof GridLayoutManager && position != RecyclerView.NO_POSITION) {
+            // items spanning several columns, such as section headers, shift the columns of the next ones
+            GridLayoutManager.SpanSizeLookup lookup = ((GridLayoutManager) layoutManager).getSpanSizeLookup();
+            column = lookup.getSpanIndex(position, mSpanCount);
+            spanSize = lookup.getSpanSize(position);
+        }
+        // on the first row, every item before is on it too
+        boolean firstRow = column == position;
 
         if (mIncludeEdge) {
             // spacing - column * ((1f / spanCount) * spacing)
             outRect.left = mSpacing - column * mSpacing / mSpanCount;
-            // (column + 1) * ((1f / spanCount) * spacing)
-            outRect.right = (column + 1) * mSpacing / mSpanCount;
+            // (column + spanSize) * ((1f / spanCount) * spacing)
+            outRect.right = (column + spanSize) * mSpacing / mSpanCount;
 
-            if (position < mSpanCount) { // top edge
+            if (firstRow) { // top edge
                 outRect.top = mSpacing;
             }
             outRect.bottom = mSpacing; // item bottom
         } else {
             // column * ((1f / spanCount) * spacing)
             outRect.left = column * mSpacing / mSpanCount;
-            // spacing - (column + 1) * ((1f / spanCount) * spacing)
-            outRect.right = mSpacing - (column + 1) * mSpacing / mSpanCount;
-            if (position >= mSpanCount) {
+            // spacing - (column + spanSize) * ((1f / spanCount) * spacing)
+            outRect.right = mSpacing - (column + spanSize) * mSpacing / mSpanCount;
+            if (!firstRow) {
                 outRect.top = mSpacing; // item top
             }
         }
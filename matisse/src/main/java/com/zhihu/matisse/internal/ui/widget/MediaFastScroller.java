@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.content.Context;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.internal.entity.MediaSections;
+import com.zhihu.matisse.internal.utils.UIUtils;
+
+/**
+ * Scrubber along the right edge of a sectioned media grid, laid over it and shown while the grid scrolls. Dragging
+ * its thumb jumps to the start of a month, picked by the share of items before it: the months' item counts split
+ * the track, so that the thumb stays where a month's items are whichever months are large. The month is shown next
+ * to the thumb while dragging.
+ */
+public class MediaFastScroller extends View {
+    private static final long HIDE_DELAY_MS = 1500;
+
+    private final Paint mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    private final RectF mRect = new RectF();
+    private final Runnable mHide = new Runnable() {
+        @Override
+        public void run() {
+            mShown = false;
+            invalidate();
+        }
+    };
+    private float mThumbWidth;
+    private float mThumbHeight;
+    private float mTouchWidth;
+    private float mBubblePadding;
+    private float mRadius;
+
+    private RecyclerView mRecyclerView;
+    private MediaSections mSections;
+    // 0 at the top of the track, 1 at the bottom
+    private float mFraction;
+    private boolean mShown;
+    private boolean mDragging;
+    private int mMonth = -1;
+    private String mLabel;
+
+    public MediaFastScroller(Context context) {
+        super(context);
+        init(context);
+    }
+
+    public MediaFastScroller(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init(context);
+    }
+
+    public MediaFastScroller(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init(context);
+    }
+
+    private void init(Context context) {
+        float density = context.getResources().getDisplayMetrics().density;
+        mThumbWidth = 6 * density;
+        mThumbHeight = 48 * density;
+        mTouchWidth = 32 * density;
+        mBubblePadding = 12 * density;
+        mRadius = 3.8f * density;
+        TypedArray ta = context.getTheme().obtainStyledAttributes(
+                new int[]{R.attr.album_element_color, R.attr.page_bg});
+        mThumbPaint.setColor(ta.getColor(0, 0xFFFFFFFF));
+        mTextPaint.setColor(ta.getColor(1, 0xFF000000));
+        ta.recycle();
+        mTextPaint.setTextSize(16 * context.getResources().getDisplayMetrics().scaledDensity);
+    }
+
+    /**
+     * Follow the scrolling of {@code recyclerView}, whose layout manager must be a {@link LinearLayoutManager}.
+     */
+    public void attachTo(RecyclerView recyclerView) {
+        mRecyclerView = recyclerView;
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (mDragging || dy == 0 || mSections == null) {
+                    return;
+                }
+                int range = recyclerView.computeVerticalScrollRange() - recyclerView.computeVerticalScrollExtent();
+                mFraction = range <= 0 ? 0 : Math.min(1f, (float) recyclerView.computeVerticalScrollOffset() / range);
+                show();
+                scheduleHide();
+            }
+        });
+    }
+
+    /**
+     * @param sections of the grid's adapter, null to hide the scrubber.
+     */
+    public void setSections(MediaSections sections) {
+        mSections = sections;
+        mMonth = -1;
+        setVisibility(sections != null && sections.getMonthCount() > 1 ? VISIBLE : GONE);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                float thumbTop = mFraction * (getHeight() - mThumbHeight);
+                if (mSections == null || !mShown || event.getX() < getWidth() - mTouchWidth
+                        || event.getY() < thumbTop - mThumbHeight / 2
+                        || event.getY() > thumbTop + mThumbHeight * 3 / 2) {
+                    // only the thumb shown after scrolling is grabbed, the grid below handles the rest
+                    return false;
+                }
+                mDragging = true;
+                getParent().requestDisallowInterceptTouchEvent(true);
+                show();
+                scrubTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging) {
+                    scrubTo(event.getY());
+                }
+                return mDragging;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (!mDragging) {
+                    return false;
+                }
+                mDragging = false;
+                mLabel = null;
+                invalidate();
+                scheduleHide();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void scrubTo(float y) {
+        float track = getHeight() - mThumbHeight;
+        mFraction = track <= 0 ? 0 : Math.max(0f, Math.min(1f, (y - mThumbHeight / 2) / track));
+        int count = mSections.getCoveredCount();
+        int target = Math.max(mSections.getMonthStart(0), Math.min(count - 1, (int) (mFraction * count)));
+        int month = mSections.monthOf(target);
+        if (month != mMonth) {
+            mMonth = month;
+            mLabel = UIUtils.formatSectionKey(getContext(), mSections.getMonthKey(month));
+            // every month starts a section, jump to its header
+            int header = mSections.listPositionOf(mSections.getMonthStart(month)) - 1;
+            ((LinearLayoutManager) mRecyclerView.getLayoutManager()).scrollToPositionWithOffset(header, 0);
+        }
+        invalidate();
+    }
+
+    private void show() {
+        removeCallbacks(mHide);
+        mShown = true;
+        invalidate();
+    }
+
+    private void scheduleHide() {
+        removeCallbacks(mHide);
+        postDelayed(mHide, HIDE_DELAY_MS);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mHide);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        if (!mShown) {
+            return;
+        }
+        float top = mFraction * (getHeight() - mThumbHeight);
+        float right = getWidth() - mThumbWidth;
+        mRect.set(right - mThumbWidth, top, right, top + mThumbHeight);
+        canvas.drawRoundRect(mRect, mRadius, mRadius, mThumbPaint);
+        if (mDragging && mLabel != null) {
+            float textWidth = mTextPaint.measureText(mLabel);
+            float bubbleRight = mRect.left - mBubblePadding;
+            float bubbleHeight = mTextPaint.getTextSize() + 2 * mBubblePadding;
+            float bubbleTop = Math.max(0, top + (mThumbHeight - bubbleHeight) / 2);
+            mRect.set(bubbleRight - textWidth - 2 * mBubblePadding, bubbleTop, bubbleRight,
+                    bubbleTop + bubbleHeight);
+            canvas.drawRoundRect(mRect, mRadius, mRadius, mThumbPaint);
+            mTextPaint.getFontMetrics(mFontMetrics);
+            canvas.drawText(mLabel, mRect.left + mBubblePadding,
+                    mRect.centerY() - (mFontMetrics.ascent + mFontMetrics.descent) / 2, mTextPaint);
+        }
+    }
+}
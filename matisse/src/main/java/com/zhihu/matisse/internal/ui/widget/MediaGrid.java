@@ -22,19 +22,25 @@ import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
 import android.text.format.DateUtils;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.engine.ImageEngine;
 import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
 
 public class MediaGrid extends SquareFrameLayout implements View.OnClickListener {
 
     public static final int UNCHECKED = Integer.MIN_VALUE;
+    // formatted once and shared by all grids, so that binding allocates nothing once they are filled
+    private static final int MAX_CACHED_DURATION = 60 * 60;
+    private static final int MAX_CACHED_CHECKED_NUM = 100;
+    private static final String[] DURATION_TEXTS = new String[MAX_CACHED_DURATION];
+    private static final String[] CHECKED_NUM_TEXTS = new String[MAX_CACHED_CHECKED_NUM];
 
     private RadiusImageView mThumbnail;
     private View mSelectedBorder;
@@ -44,9 +50,15 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
     private TextView mVideoDuration;
     private View mDurationContainer;
 
-    private Item mMedia;
+    private MediaIndex mIndex;
+    private int mPosition;
     private PreBindInfo mPreBindInfo;
     private OnMediaGridClickListener mListener;
+    private int mUncheckedColor;
+    private int mCheckedColor;
+    // what the views currently show, binding the same again leaves them untouched
+    private int mCheckedNum = 0;
+    private long mDurationSeconds = -1;
 
     public MediaGrid(Context context) {
         super(context);
@@ -70,12 +82,14 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
         mVideoDuration = (TextView) findViewById(R.id.video_duration);
 
         mThumbnail.setOnClickListener(this);
+        mUncheckedColor = getResources().getColor(R.color.black_50_opacity);
+        mCheckedColor = getResources().getColor(R.color.media_blue);
     }
 
     @Override
     public void onClick(View v) {
         if (mListener != null) {
-            mListener.onThumbnailClicked(mThumbnail, mMedia, mPreBindInfo.mViewHolder);
+            mListener.onThumbnailClicked(mThumbnail, getMedia(), mPreBindInfo.mViewHolder);
         }
 
         ViewCompat.animate(this).rotation(360).setDuration(300).start();
@@ -85,56 +99,105 @@ public class MediaGrid extends SquareFrameLayout implements View.OnClickListener
         mPreBindInfo = info;
     }
 
-    public void bindMedia(Item item) {
-        mMedia = item;
+    /**
+     * Bind the item at {@code position} of {@code index} without creating an {@link Item} for it.
+     */
+    public void bindMedia(MediaIndex index, int position) {
+        mIndex = index;
+        mPosition = position;
         setGifTag();
         setImage();
         setVideoDuration();
     }
 
+    /**
+     * Cancel loading the thumbnail of the media bound, once this grid no longer shows it.
+     */
+    public void unbindMedia() {
+        ImageEngine engine = SelectionSpec.getInstance().imageEngine;
+        if (engine instanceof ImageEngine.Controllable) {
+            ((ImageEngine.Controllable) engine).clear(getContext(), mThumbnail);
+        }
+    }
+
     public Item getMedia() {
-        return mMedia;
+        return mIndex.itemAt(mPosition);
+    }
+
+    public long getMediaId() {
+        return mIndex.idAt(mPosition);
     }
 
     private void setGifTag() {
-        mGifTag.setVisibility(mMedia.isGif() ? View.VISIBLE : View.GONE);
+        mGifTag.setVisibility(mIndex.isGif(mPosition) ? View.VISIBLE : View.GONE);
     }
 
     public void setCheckedNum(int checkedNum) {
+        if (checkedNum == mCheckedNum) {
+            return;
+        }
+        mCheckedNum = checkedNum;
         if (checkedNum == MediaGrid.UNCHECKED) {
             mSelectedBorder.setVisibility(View.INVISIBLE);
             mSelectedNumberBackground.setBackgroundColor(Color.TRANSPARENT);
             mSelectedNumber.setVisibility(View.INVISIBLE);
-            mDurationContainer.setBackgroundColor(getResources().getColor(R.color.black_50_opacity));
+            mDurationContainer.setBackgroundColor(mUncheckedColor);
         } else {
             mSelectedBorder.setVisibility(View.VISIBLE);
-            mSelectedNumberBackground.setBackgroundColor(getResources().getColor(R.color.media_blue));
+            mSelectedNumberBackground.setBackgroundColor(mCheckedColor);
             mSelectedNumber.setVisibility(View.VISIBLE);
-            mSelectedNumber.setText(String.valueOf(checkedNum));
-            mDurationContainer.setBackgroundColor(getResources().getColor(R.color.media_blue));
+            mSelectedNumber.setText(checkedNumText(checkedNum));
+            mDurationContainer.setBackgroundColor(mCheckedColor);
+        }
+    }
+
+    private static String checkedNumText(int checkedNum) {
+        if (checkedNum < 0 || checkedNum >= MAX_CACHED_CHECKED_NUM) {
+            return String.valueOf(checkedNum);
         }
+        String text = CHECKED_NUM_TEXTS[checkedNum];
+        if (text == null) {
+            text = String.valueOf(checkedNum);
+            CHECKED_NUM_TEXTS[checkedNum] = text;
+        }
+        return text;
     }
 
     private void setImage() {
-        if (mMedia.isGif()) {
+        if (mIndex.isGif(mPosition)) {
             SelectionSpec.getInstance().imageEngine.loadGifThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getContentUri());
+                    mPreBindInfo.mPlaceholder, mThumbnail, mIndex.uriAt(mPosition));
         } else {
-            Log.d("loadImage", mMedia.getContentUri().toString());
             SelectionSpec.getInstance().imageEngine.loadThumbnail(getContext(), mPreBindInfo.mResize,
-                    mPreBindInfo.mPlaceholder, mThumbnail, mMedia.getContentUri());
+                    mPreBindInfo.mPlaceholder, mThumbnail, mIndex.uriAt(mPosition));
         }
     }
 
     private void setVideoDuration() {
-        if (mMedia.isVideo()) {
+        if (mIndex.isVideo(mPosition)) {
             mDurationContainer.setVisibility(VISIBLE);
-            mVideoDuration.setText(DateUtils.formatElapsedTime(mMedia.duration / 1000));
+            long seconds = mIndex.durationAt(mPosition) / 1000;
+            if (seconds != mDurationSeconds) {
+                mDurationSeconds = seconds;
+                mVideoDuration.setText(durationText(seconds));
+            }
         } else {
             mDurationContainer.setVisibility(GONE);
         }
     }
 
+    private static String durationText(long seconds) {
+        if (seconds < 0 || seconds >= MAX_CACHED_DURATION) {
+            return DateUtils.formatElapsedTime(seconds);
+        }
+        String text = DURATION_TEXTS[(int) seconds];
+        if (text == null) {
+            text = DateUtils.formatElapsedTime(seconds);
+            DURATION_TEXTS[(int) seconds] = text;
+        }
+        return text;
+    }
+
     public void setOnMediaGridClickListener(OnMediaGridClickListener listener) {
         mListener = listener;
     }
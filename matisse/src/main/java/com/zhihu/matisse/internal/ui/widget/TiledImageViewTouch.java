@@ -0,0 +1,381 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.ui.widget;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.Nullable;
+import android.util.AttributeSet;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.utils.DecodeQueue;
+import com.zhihu.matisse.internal.utils.ExifInterfaceCompat;
+import com.zhihu.matisse.internal.utils.PhotoMetadataUtils;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import it.sephiroth.android.library.imagezoom.ImageViewTouch;
+
+/**
+ * {@link ImageViewTouch} which, once zoomed in past the detail of the image it shows, draws the visible part of the
+ * original over it in tiles decoded with {@link BitmapRegionDecoder}, downsampled as far as the zoom allows. Only
+ * tiles on screen are decoded, one at a time on the {@link SelectionSpec#decodeExecutor decode lane}, newest first,
+ * and they are kept in a cache bounded by the size of the screen, so memory does not grow with the size of the
+ * original nor the zoom. Tiles are dropped once zoomed out again. Once the original is open, the view zooms in
+ * until its pixels are shown one to one, if that is further than {@link ImageViewTouch} allows.
+ */
+public class TiledImageViewTouch extends ImageViewTouch {
+    // edge of the tiles as decoded
+    private static final int TILE_SIZE = 512;
+    // tiles shown are up to twice as detailed as the screen and overlap its edges, keep what covers it a few times
+    private static final int CACHED_SCREENS = 4;
+    // tiles are only worth it when they show this many times the detail of the image shown
+    private static final float MIN_DETAIL_GAIN = 1.25f;
+    // the image shown is the original downsampled, anything shaped otherwise, e.g. a square thumbnail, is not tiled
+    private static final float MAX_ASPECT_ERROR = 0.02f;
+    // tiles are decoded as RGB_565
+    private static final int BYTES_PER_PIXEL = 2;
+    // one at a time, a region decoder decodes one region at a time; newest first, the tiles just scrolled to
+    private static final DecodeQueue TILE_QUEUE = new DecodeQueue(1, null);
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final Paint PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    private final LruCache<Long, Bitmap> mTiles;
+    // tiles being decoded, by key
+    private final Map<Long, TileTask> mPending = new LinkedHashMap<>();
+    private final Set<Long> mVisible = new HashSet<>();
+    // from the original's pixels to the view's
+    private final Matrix mTileMatrix = new Matrix();
+    private final Matrix mInverse = new Matrix();
+    private final RectF mRect = new RectF();
+    private final Rect mTileRect = new Rect();
+    private Uri mUri;
+    // null until first zoomed in far enough, or if the original cannot be decoded by region
+    private Source mSource;
+    private boolean mOpening;
+    private boolean mUnsupported;
+
+    public TiledImageViewTouch(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int maxBytes = metrics.widthPixels * metrics.heightPixels * CACHED_SCREENS * BYTES_PER_PIXEL;
+        mTiles = new LruCache<Long, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Long key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Draw tiles of the original at {@code uri} once zoomed in past the image shown, which must show the whole
+     * original, downsampled and turned upright.
+     *
+     * @param uri null to only show the image.
+     */
+    public void setTileSource(@Nullable Uri uri) {
+        if (uri == null ? mUri == null : uri.equals(mUri)) {
+            return;
+        }
+        release();
+        mUri = uri;
+        mUnsupported = false;
+        invalidate();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // opened again if zoomed in once attached again
+        release();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        Drawable drawable = getDrawable();
+        if (mUri == null || mUnsupported || drawable == null
+                || drawable.getIntrinsicWidth() <= 0 || drawable.getIntrinsicHeight() <= 0) {
+            return;
+        }
+        if (mSource == null) {
+            // view pixels per pixel of the image shown
+            if (!mOpening && getImageMatrix().mapRadius(1f) > MIN_DETAIL_GAIN) {
+                open();
+            }
+            return;
+        }
+        float shownScale = updateTileMatrix(drawable);
+        float scale = mTileMatrix.mapRadius(1f);
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1f) {
+            sampleSize *= 2;
+        }
+        mVisible.clear();
+        if (shownScale > 0 && 1f / sampleSize > shownScale * MIN_DETAIL_GAIN && mTileMatrix.invert(mInverse)) {
+            drawTiles(canvas, sampleSize);
+        } else {
+            mTiles.evictAll();
+        }
+        // the queue only holds what is on screen
+        for (Iterator<TileTask> it = mPending.values().iterator(); it.hasNext();) {
+            TileTask task = it.next();
+            if (!mVisible.contains(task.mKey)) {
+                task.mCancelled = true;
+                TILE_QUEUE.remove(task);
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    protected float computeMaxZoom() {
+        float maxZoom = super.computeMaxZoom();
+        if (mSource == null || getWidth() <= 0 || getHeight() <= 0) {
+            return maxZoom;
+        }
+        // the image shown fits the view, as many times as the original is larger brings it to one to one
+        boolean sideways = mSource.mOrientation % 180 != 0;
+        int rotatedWidth = sideways ? mSource.mHeight : mSource.mWidth;
+        int rotatedHeight = sideways ? mSource.mWidth : mSource.mHeight;
+        return Math.max(maxZoom, Math.max((float) rotatedWidth / getWidth(), (float) rotatedHeight / getHeight()));
+    }
+
+    /**
+     * Map the original's pixels to the view's through the image shown.
+     *
+     * @return pixels of the image shown per pixel of the original, or 0 if it does not show the original.
+     */
+    private float updateTileMatrix(Drawable drawable) {
+        boolean sideways = mSource.mOrientation % 180 != 0;
+        int rotatedWidth = sideways ? mSource.mHeight : mSource.mWidth;
+        int rotatedHeight = sideways ? mSource.mWidth : mSource.mHeight;
+        float scaleX = (float) drawable.getIntrinsicWidth() / rotatedWidth;
+        float scaleY = (float) drawable.getIntrinsicHeight() / rotatedHeight;
+        if (Math.abs(scaleX / scaleY - 1f) > MAX_ASPECT_ERROR) {
+            return 0;
+        }
+        mTileMatrix.setRotate(mSource.mOrientation);
+        mRect.set(0, 0, mSource.mWidth, mSource.mHeight);
+        mTileMatrix.mapRect(mRect);
+        mTileMatrix.postTranslate(-mRect.left, -mRect.top);
+        mTileMatrix.postScale(scaleX, scaleY);
+        mTileMatrix.postConcat(getImageMatrix());
+        mTileMatrix.postTranslate(getPaddingLeft(), getPaddingTop());
+        return scaleX;
+    }
+
+    private void drawTiles(Canvas canvas, int sampleSize) {
+        mRect.set(0, 0, getWidth(), getHeight());
+        mInverse.mapRect(mRect);
+        int extent = TILE_SIZE * sampleSize;
+        int firstColumn = Math.max(0, (int) (mRect.left / extent));
+        int firstRow = Math.max(0, (int) (mRect.top / extent));
+        int lastColumn = Math.min((mSource.mWidth - 1) / extent, (int) (mRect.right / extent));
+        int lastRow = Math.min((mSource.mHeight - 1) / extent, (int) (mRect.bottom / extent));
+        int save = canvas.save();
+        canvas.concat(mTileMatrix);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                long key = ((long) sampleSize << 48) | ((long) row << 24) | column;
+                mTileRect.set(column * extent, row * extent,
+                        Math.min(mSource.mWidth, (column + 1) * extent), Math.min(mSource.mHeight, (row + 1) * extent));
+                mVisible.add(key);
+                Bitmap tile = mTiles.get(key);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, null, mTileRect, PAINT);
+                } else if (!mPending.containsKey(key)) {
+                    TileTask task = new TileTask(this, mSource, key, new Rect(mTileRect), sampleSize);
+                    mPending.put(key, task);
+                    TILE_QUEUE.execute(task);
+                }
+            }
+        }
+        canvas.restoreToCount(save);
+    }
+
+    private void open() {
+        mOpening = true;
+        final Uri uri = mUri;
+        final ContentResolver resolver = getContext().getContentResolver();
+        TILE_QUEUE.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Source source = Source.open(resolver, uri);
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!mOpening || !uri.equals(mUri)) {
+                            if (source != null) {
+                                source.recycle();
+                            }
+                            return;
+                        }
+                        mOpening = false;
+                        mSource = source;
+                        mUnsupported = source == null;
+                        // computed again from the original
+                        setMaxScale(ZOOM_INVALID);
+                        invalidate();
+                    }
+                });
+            }
+        });
+    }
+
+    private void onTileDecoded(TileTask task, Bitmap tile) {
+        if (mPending.get(task.mKey) != task) {
+            return;
+        }
+        mPending.remove(task.mKey);
+        if (tile != null) {
+            mTiles.put(task.mKey, tile);
+            invalidate();
+        }
+    }
+
+    private void release() {
+        for (TileTask task : mPending.values()) {
+            task.mCancelled = true;
+            TILE_QUEUE.remove(task);
+        }
+        mPending.clear();
+        mTiles.evictAll();
+        mOpening = false;
+        if (mSource != null) {
+            final Source source = mSource;
+            mSource = null;
+            setMaxScale(ZOOM_INVALID);
+            // after a tile being decoded from it, if any
+            TILE_QUEUE.execute(new Runnable() {
+                @Override
+                public void run() {
+                    source.recycle();
+                }
+            });
+        }
+    }
+
+    /**
+     * An original open for decoding by region.
+     */
+    private static final class Source {
+        private final BitmapRegionDecoder mDecoder;
+        private final int mWidth;
+        private final int mHeight;
+        // clockwise, in degrees
+        private final int mOrientation;
+
+        private Source(BitmapRegionDecoder decoder, int orientation) {
+            mDecoder = decoder;
+            mWidth = decoder.getWidth();
+            mHeight = decoder.getHeight();
+            mOrientation = orientation;
+        }
+
+        /**
+         * @return null if the original cannot be decoded by region, e.g. it is no JPEG, PNG nor WebP.
+         */
+        static Source open(ContentResolver resolver, Uri uri) {
+            ParcelFileDescriptor descriptor = null;
+            try {
+                // from a descriptor rather than a stream, which would be copied into memory whole
+                descriptor = resolver.openFileDescriptor(uri, "r");
+                if (descriptor == null) {
+                    return null;
+                }
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(descriptor.getFileDescriptor(), false);
+                String path = PhotoMetadataUtils.getPath(resolver, uri);
+                int orientation = path == null ? 0 : Math.max(0, ExifInterfaceCompat.getExifOrientation(path));
+                return new Source(decoder, orientation);
+            } catch (IOException | SecurityException e) {
+                return null;
+            } finally {
+                if (descriptor != null) {
+                    try {
+                        descriptor.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        void recycle() {
+            mDecoder.recycle();
+        }
+    }
+
+    private static final class TileTask implements Runnable {
+        private final TiledImageViewTouch mView;
+        private final Source mSource;
+        private final long mKey;
+        private final Rect mRegion;
+        private final int mSampleSize;
+        private volatile boolean mCancelled;
+
+        TileTask(TiledImageViewTouch view, Source source, long key, Rect region, int sampleSize) {
+            mView = view;
+            mSource = source;
+            mKey = key;
+            mRegion = region;
+            mSampleSize = sampleSize;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = mSampleSize;
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+            Bitmap tile;
+            try {
+                tile = mSource.mDecoder.decodeRegion(mRegion, options);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // recycled meanwhile, or a region it cannot decode
+                tile = null;
+            }
+            final Bitmap decoded = tile;
+            MAIN_HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    mView.onTileDecoded(TileTask.this, decoded);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Queue of decodes run on the {@link SelectionSpec#decodeExecutor decode lane}, at most a few at a time, in an
+ * order of its own: by the given comparator, then newest first. Tasks wait here rather than in the lane, so they
+ * can still be reordered or taken off, and a burst of them never fills a bounded lane such as the
+ * {@link android.os.AsyncTask} pool.
+ */
+public final class DecodeQueue implements Executor {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final int mMaxRunning;
+    private final PriorityQueue<Entry> mQueue;
+    private final Runnable mWorker = new Runnable() {
+        @Override
+        public void run() {
+            runNext();
+        }
+    };
+    // workers given to the lane, and those of them not started yet
+    private int mRunning;
+    private int mStarting;
+    private long mSequence;
+
+    /**
+     * @param maxRunning tasks taken to the lane at once, 1 to run them one after another.
+     * @param order      tasks coming first, or null to only take the newest first.
+     */
+    public DecodeQueue(int maxRunning, final Comparator<Runnable> order) {
+        mMaxRunning = maxRunning;
+        mQueue = new PriorityQueue<>(INITIAL_CAPACITY, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                int result = order == null ? 0 : order.compare(a.mTask, b.mTask);
+                if (result != 0) {
+                    return result;
+                }
+                return a.mSequence > b.mSequence ? -1 : (a.mSequence < b.mSequence ? 1 : 0);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        mQueue.add(new Entry(task, mSequence++));
+        dispatch();
+    }
+
+    /**
+     * @return whether {@code task} was waiting, it will not run then.
+     */
+    public synchronized boolean remove(Runnable task) {
+        for (Iterator<Entry> it = mQueue.iterator(); it.hasNext();) {
+            if (it.next().mTask == task) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void dispatch() {
+        // a worker takes the first task once the lane runs it, whichever comes first by then
+        while (mRunning < mMaxRunning && mStarting < mQueue.size()) {
+            mRunning++;
+            mStarting++;
+            try {
+                SelectionSpec.getInstance().decodeExecutor.execute(mWorker);
+            } catch (RuntimeException e) {
+                mRunning--;
+                mStarting--;
+                throw e;
+            }
+        }
+    }
+
+    private void runNext() {
+        Entry next;
+        synchronized (this) {
+            mStarting--;
+            next = mQueue.poll();
+        }
+        try {
+            if (next != null) {
+                next.mTask.run();
+            }
+        } finally {
+            synchronized (this) {
+                mRunning--;
+                dispatch();
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Runnable mTask;
+        // order of the tasks queued
+        private final long mSequence;
+
+        Entry(Runnable task, long sequence) {
+            mTask = task;
+            mSequence = sequence;
+        }
+    }
+}
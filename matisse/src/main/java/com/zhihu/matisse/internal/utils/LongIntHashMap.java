@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from {@code long} to {@code int}, without boxing keys or values. Meant for lookups
+ * made once per media row, where {@code HashMap<Long, Integer>} would allocate on every call.
+ */
+public final class LongIntHashMap {
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int mMissingValue;
+    private long[] mKeys;
+    private int[] mValues;
+    private boolean[] mUsed;
+    private int mSize;
+
+    /**
+     * @param missingValue returned by {@link #get(long)} for absent keys.
+     */
+    public LongIntHashMap(int missingValue) {
+        this(missingValue, DEFAULT_CAPACITY);
+    }
+
+    public LongIntHashMap(int missingValue, int expectedSize) {
+        mMissingValue = missingValue;
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int get(long key) {
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; mUsed[slot]; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == key) {
+                return mValues[slot];
+            }
+        }
+        return mMissingValue;
+    }
+
+    public boolean containsKey(long key) {
+        int mask = mKeys.length - 1;
+        for (int slot = hash(key) & mask; mUsed[slot]; slot = (slot + 1) & mask) {
+            if (mKeys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(long key, int value) {
+        int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mUsed[slot]) {
+            if (mKeys[slot] == key) {
+                mValues[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mUsed[slot] = true;
+        mKeys[slot] = key;
+        mValues[slot] = value;
+        if (++mSize > mKeys.length * LOAD_FACTOR) {
+            rehash(mKeys.length * 2);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(mUsed, false);
+        mSize = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = mKeys;
+        int[] values = mValues;
+        boolean[] used = mUsed;
+        allocate(capacity);
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        mKeys = new long[capacity];
+        mValues = new int[capacity];
+        mUsed = new boolean[capacity];
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long key) {
+        // spread the bits, bucket ids and row ids are far from uniform
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
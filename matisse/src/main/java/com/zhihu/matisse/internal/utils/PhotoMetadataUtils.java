@@ -143,13 +143,10 @@ public final class PhotoMetadataUtils {
             return false;
         }
 
-        ContentResolver resolver = context.getContentResolver();
-        for (MimeType type : SelectionSpec.getInstance().mimeTypeSet) {
-            if (type.checkType(resolver, item.getContentUri())) {
-                return true;
-            }
-        }
-        return false;
+        // the stored MIME type is enough for rows of the media store, only captured files need resolving
+        MimeType type = item.type != null ? item.type
+                : MimeType.typeOf(context.getContentResolver(), item.getContentUri());
+        return type != null && SelectionSpec.getInstance().mimeTypeSet.contains(type);
     }
 
     private static boolean shouldRotate(ContentResolver resolver, Uri uri) {
@@ -16,8 +16,17 @@
 package com.zhihu.matisse.internal.utils;
 
 import android.content.Context;
+import android.text.format.DateUtils;
+
+import com.zhihu.matisse.R;
+import com.zhihu.matisse.internal.entity.MediaSections;
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import java.util.Calendar;
 
 public class UIUtils {
+    // edges thumbnails are loaded at; 96 and 384 are those of the media store's own thumbnails
+    private static final int[] THUMBNAIL_SIZES = {96, 128, 192, 256, 384, 512, 768};
 
     public static int spanCount(Context context, int gridExpectedSize) {
         int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
@@ -29,4 +38,58 @@ public class UIUtils {
         return spanCount;
     }
 
+    /**
+     * @return number of columns of the media grid for the current {@link SelectionSpec}.
+     */
+    public static int gridSpanCount(Context context) {
+        SelectionSpec spec = SelectionSpec.getInstance();
+        return spec.gridExpectedSize > 0 ? spanCount(context, spec.gridExpectedSize) : spec.spanCount;
+    }
+
+    /**
+     * @return size thumbnails of the media grid are loaded at. Covers of the album list and placeholders of the
+     * preview are loaded at the same size, so that the image engine serves them all from one cache entry.
+     */
+    public static int thumbnailSize(Context context, int spanCount) {
+        int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+        int availableWidth = screenWidth - context.getResources().getDimensionPixelSize(
+                R.dimen.media_grid_spacing) * (spanCount - 1);
+        return snapThumbnailSize((int) (availableWidth / spanCount * SelectionSpec.getInstance().thumbnailScale));
+    }
+
+    /**
+     * Snap {@code size} up to the smallest of a few canonical thumbnail sizes, so that tiles a few pixels apart, e.g.
+     * in either orientation or on similar screens, share what the image engine cached.
+     *
+     * @return the canonical size, or {@code size} itself if larger than all of them.
+     */
+    public static int snapThumbnailSize(int size) {
+        for (int canonical : THUMBNAIL_SIZES) {
+            if (size <= canonical) {
+                return canonical;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @param key a {@link MediaSections#getKey(int) section key} or {@link MediaSections#getMonthKey(int) month key}.
+     * @return the day or month of the key, in the user's locale.
+     */
+    public static String formatSectionKey(Context context, long key) {
+        if (key == MediaSections.KEY_UNDATED) {
+            return context.getString(R.string.section_undated);
+        }
+        boolean day = key >= 1000000L;
+        long month = day ? key / 100 : key;
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set((int) (month / 100), (int) (month % 100) - 1, day ? (int) (key % 100) : 1);
+        int flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_YEAR;
+        if (!day) {
+            flags |= DateUtils.FORMAT_NO_MONTH_DAY;
+        }
+        return DateUtils.formatDateTime(context, calendar.getTimeInMillis(), flags);
+    }
+
 }
@@ -22,18 +22,27 @@ import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.AppCompatActivity;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.AdapterView;
+import android.widget.EditText;
+import android.widget.PopupMenu;
 import android.widget.TextView;
 
 import com.zhihu.matisse.R;
+import com.zhihu.matisse.SortOrder;
 import com.zhihu.matisse.internal.entity.Album;
 import com.zhihu.matisse.internal.entity.SelectionSpec;
+import com.zhihu.matisse.internal.loader.AlbumAggregator;
+import com.zhihu.matisse.internal.loader.AlbumCursor;
 import com.zhihu.matisse.internal.model.AlbumCollection;
+import com.zhihu.matisse.internal.model.AlbumMediaCollection;
 import com.zhihu.matisse.internal.model.SelectedItemCollection;
 import com.zhihu.matisse.internal.ui.MediaSelectionFragment;
 import com.zhihu.matisse.internal.ui.adapter.AlbumsAdapter;
@@ -56,6 +65,7 @@ public class MatisseActivity extends AppCompatActivity implements
 
     public static final String EXTRA_RESULT_SELECTION = "extra_result_selection";
     public static final String EXTRA_RESULT_SELECTION_PATH = "extra_result_selection_path";
+    private static final String STATE_SORT_ORDER = "state_sort_order";
     private static final int REQUEST_CODE_PREVIEW = 23;
     private static final int REQUEST_CODE_CAPTURE = 24;
     private final AlbumCollection mAlbumCollection = new AlbumCollection();
@@ -68,6 +78,9 @@ public class MatisseActivity extends AppCompatActivity implements
     private View mContainer;
     private View mEmptyView;
     private TextView btnDone;
+    private Album mSelectedAlbum;
+    private SortOrder mSortOrder;
+    private String mQuery = "";
 
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
@@ -101,6 +114,12 @@ public class MatisseActivity extends AppCompatActivity implements
         mAlbumCollection.onCreate(this, this);
         mAlbumCollection.onRestoreInstanceState(savedInstanceState);
         mAlbumCollection.loadAlbums();
+        if (savedInstanceState == null) {
+            // "All" is selected first, query its media alongside the album list instead of after it;
+            // the grid fragment takes the loader over once the album list creates it
+            AlbumMediaCollection.preload(this, Album.all(), mSpec.capture,
+                    mSpec.pagedLoadingEnabled() ? mSpec.pageSize : 0);
+        }
 
         View btnBack = findViewById(R.id.btnBack);
         btnBack.setOnClickListener(new View.OnClickListener() {
@@ -117,6 +136,64 @@ public class MatisseActivity extends AppCompatActivity implements
                 done();
             }
         });
+
+        mSortOrder = savedInstanceState != null
+                ? (SortOrder) savedInstanceState.getSerializable(STATE_SORT_ORDER) : mSpec.sortOrders[0];
+        final View btnSort = findViewById(R.id.btnSort);
+        if (mSpec.sortOrders.length > 1 && !mSpec.pagedLoadingEnabled()) {
+            btnSort.setVisibility(View.VISIBLE);
+            btnSort.setOnClickListener(new View.OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    showSortOrders(btnSort);
+                }
+            });
+        }
+
+        if (mSpec.searchEnabled && !mSpec.pagedLoadingEnabled()) {
+            // the text, hence the query, is restored by the view
+            EditText search = findViewById(R.id.search);
+            search.setVisibility(View.VISIBLE);
+            search.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                    mQuery = s.toString().trim();
+                    MediaSelectionFragment fragment = findMediaSelectionFragment();
+                    if (fragment != null) {
+                        fragment.setQuery(mQuery);
+                    }
+                }
+            });
+        }
+    }
+
+    private void showSortOrders(View anchor) {
+        PopupMenu popup = new PopupMenu(this, anchor);
+        for (int i = 0; i < mSpec.sortOrders.length; i++) {
+            SortOrder order = mSpec.sortOrders[i];
+            popup.getMenu().add(Menu.NONE, i, i, order.getLabel()).setCheckable(true).setChecked(order == mSortOrder);
+        }
+        popup.getMenu().setGroupCheckable(Menu.NONE, true, true);
+        popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
+            @Override
+            public boolean onMenuItemClick(MenuItem item) {
+                mSortOrder = mSpec.sortOrders[item.getItemId()];
+                MediaSelectionFragment fragment = findMediaSelectionFragment();
+                if (fragment != null) {
+                    fragment.setSortOrder(mSortOrder);
+                }
+                return true;
+            }
+        });
+        popup.show();
     }
 
     private void back() {
@@ -138,6 +215,7 @@ public class MatisseActivity extends AppCompatActivity implements
         super.onSaveInstanceState(outState);
         mSelectedCollection.onSaveInstanceState(outState);
         mAlbumCollection.onSaveInstanceState(outState);
+        outState.putSerializable(STATE_SORT_ORDER, mSortOrder);
     }
 
     @Override
@@ -206,6 +284,10 @@ public class MatisseActivity extends AppCompatActivity implements
 
             @Override
             public void run() {
+                if (cursor != mAlbumsAdapter.getCursor()) {
+                    // already replaced by a newer album list
+                    return;
+                }
                 cursor.moveToPosition(mAlbumCollection.getCurrentSelection());
                 mAlbumsSpinner.setSelection(MatisseActivity.this,
                         mAlbumCollection.getCurrentSelection());
@@ -213,6 +295,19 @@ public class MatisseActivity extends AppCompatActivity implements
                 if (album.isAll() && SelectionSpec.getInstance().capture) {
                     album.addCaptureCount();
                 }
+                if (mSelectedAlbum != null && mSelectedAlbum.getId().equals(album.getId())
+                        && mSelectedAlbum.isEmpty() == album.isEmpty()) {
+                    // the album list was reloaded or verified, the grid follows its own loader
+                    // unless it shows a view of the "All" album, which follows the new album list
+                    if (!album.isAll()) {
+                        MediaSelectionFragment fragment = findMediaSelectionFragment();
+                        AlbumAggregator aggregator = albumAggregator();
+                        if (fragment != null && aggregator != null) {
+                            fragment.showAlbum(album, aggregator);
+                        }
+                    }
+                    return;
+                }
                 onAlbumSelected(album);
             }
         });
@@ -224,13 +319,20 @@ public class MatisseActivity extends AppCompatActivity implements
     }
 
     private void onAlbumSelected(Album album) {
+        mSelectedAlbum = album;
         if (album.isAll() && album.isEmpty()) {
             mContainer.setVisibility(View.GONE);
             mEmptyView.setVisibility(View.VISIBLE);
         } else {
             mContainer.setVisibility(View.VISIBLE);
             mEmptyView.setVisibility(View.GONE);
-            Fragment fragment = MediaSelectionFragment.newInstance(album);
+            // switch over the media already loaded for "All" when possible, instead of querying again
+            MediaSelectionFragment current = findMediaSelectionFragment();
+            AlbumAggregator aggregator = albumAggregator();
+            if (current != null && aggregator != null && current.showAlbum(album, aggregator)) {
+                return;
+            }
+            Fragment fragment = MediaSelectionFragment.newInstance(album, mSortOrder, mQuery);
             getSupportFragmentManager()
                     .beginTransaction()
                     .replace(R.id.container, fragment, MediaSelectionFragment.class.getSimpleName())
@@ -238,6 +340,16 @@ public class MatisseActivity extends AppCompatActivity implements
         }
     }
 
+    private MediaSelectionFragment findMediaSelectionFragment() {
+        return (MediaSelectionFragment) getSupportFragmentManager()
+                .findFragmentByTag(MediaSelectionFragment.class.getSimpleName());
+    }
+
+    private AlbumAggregator albumAggregator() {
+        Cursor cursor = mAlbumsAdapter.getCursor();
+        return cursor instanceof AlbumCursor ? ((AlbumCursor) cursor).getAggregator() : null;
+    }
+
     @Override
     public void onMediaClick() {
         int selectedCount = mSelectedCollection.count();
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MimeTypeTest {
+
+    @Test
+    public void everyNameAndExtensionResolvesToItsType() {
+        for (MimeType type : MimeType.values()) {
+            for (String name : type.getMimeTypeNames()) {
+                assertSame(name, type, MimeType.fromMimeTypeName(name));
+            }
+        }
+        assertSame(MimeType.JPEG, MimeType.fromExtension("jpg"));
+        assertSame(MimeType.JPEG, MimeType.fromExtension("jpeg"));
+        assertSame(MimeType.MP4, MimeType.fromExtension("m4v"));
+        assertSame(MimeType.HEIC, MimeType.fromExtension("heic"));
+    }
+
+    @Test
+    public void alternateNamesFollowTheMainName() {
+        assertEquals("image/x-ms-bmp", MimeType.BMP.getMimeTypeNames().get(0));
+        assertSame(MimeType.BMP, MimeType.fromMimeTypeName("image/bmp"));
+        assertSame(MimeType.AVI, MimeType.fromMimeTypeName("video/x-msvideo"));
+    }
+
+    @Test
+    public void lookupIgnoresCase() {
+        assertSame(MimeType.PNG, MimeType.fromMimeTypeName("IMAGE/PNG"));
+        assertSame(MimeType.QUICKTIME, MimeType.fromExtension("MOV"));
+    }
+
+    @Test
+    public void unknownIsNull() {
+        assertNull(MimeType.fromMimeTypeName(null));
+        assertNull(MimeType.fromMimeTypeName("audio/mpeg"));
+        assertNull(MimeType.fromMimeTypeName(""));
+        assertNull(MimeType.fromExtension(null));
+        assertNull(MimeType.fromExtension("txt"));
+    }
+
+    @Test
+    public void imageAndVideoSetsSplitAllTypes() {
+        for (MimeType type : MimeType.ofImage()) {
+            assertTrue(type.isImage());
+            assertFalse(type.isVideo());
+        }
+        for (MimeType type : MimeType.ofVideo()) {
+            assertTrue(type.isVideo());
+            assertFalse(type.isImage());
+        }
+        EnumSet<MimeType> all = EnumSet.copyOf(MimeType.ofImage());
+        all.addAll(MimeType.ofVideo());
+        assertEquals(MimeType.ofAll(), all);
+    }
+}
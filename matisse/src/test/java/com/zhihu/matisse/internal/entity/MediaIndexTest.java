@@ -0,0 +1,109 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.entity;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaIndexTest {
+
+    @Test
+    public void roundTrip() throws IOException {
+        MediaIndex index = sample();
+        MediaIndex read = MediaIndex.readFrom(ByteBuffer.wrap(bytesOf(index)));
+        assertTrue(read.contentEquals(index));
+        assertTrue(read.isCapture(0));
+        assertTrue(read.isGif(2));
+        assertTrue(read.isVideo(3));
+        assertNull(read.mimeTypeAt(4));
+        assertNull(read.bucketNameAt(0));
+        assertEquals("Camera", read.bucketNameAt(1));
+        assertEquals("Download", read.bucketNameAt(4));
+    }
+
+    @Test
+    public void roundTripEmpty() throws IOException {
+        MediaIndex read = MediaIndex.readFrom(ByteBuffer.wrap(bytesOf(MediaIndex.empty())));
+        assertEquals(0, read.getCount());
+    }
+
+    @Test
+    public void roundTripView() throws IOException {
+        MediaIndex index = sample();
+        MediaIndex view = index.view(new int[]{0, 2}, 1);
+        MediaIndex read = MediaIndex.readFrom(ByteBuffer.wrap(bytesOf(view)));
+        assertTrue(read.contentEquals(view));
+        assertEquals(index.idAt(1), read.idAt(0));
+        assertEquals(index.idAt(3), read.idAt(1));
+    }
+
+    @Test
+    public void contentDiffers() {
+        MediaIndex index = sample();
+        MediaIndex other = new MediaIndex.Builder()
+                .add(Item.ITEM_ID_CAPTURE, 0, 0, 0, null, 0, 0)
+                .build();
+        assertFalse(index.contentEquals(other));
+    }
+
+    @Test
+    public void bucketNameDiffers() {
+        MediaIndex index = new MediaIndex.Builder().add(1, 7, "Camera", 0, 0, "image/jpeg", 0, 0).build();
+        MediaIndex other = new MediaIndex.Builder().add(1, 7, "Screenshots", 0, 0, "image/jpeg", 0, 0).build();
+        assertFalse(index.contentEquals(other));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedColumnsAreRejected() throws IOException {
+        byte[] bytes = bytesOf(sample());
+        MediaIndex.readFrom(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeCountIsRejected() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytesOf(sample()));
+        buffer.putInt(0, -1);
+        MediaIndex.readFrom(buffer);
+    }
+
+    private static MediaIndex sample() {
+        return new MediaIndex.Builder()
+                .add(Item.ITEM_ID_CAPTURE, 0, 0, 0, null, 0, 0)
+                .add(42, 7, "Camera", 1500000000000L, 1500000000, "image/jpeg", 1024, 0)
+                .add(41, 7, "Camera", 1400000000000L, 1400000000, "image/gif", 2048, 0)
+                .add(40, 8, "Download", 1300000000000L, 1300000000, "video/mp4", 4096, 12000)
+                .add(39, 8, "Download", 1200000000000L, 1200000000, null, 0, 0)
+                .build();
+    }
+
+    private static byte[] bytesOf(MediaIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        index.writeTo(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.entity;
+
+import com.zhihu.matisse.DateSection;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+
+public class MediaSectionsTest {
+
+    @Test
+    public void splitsByDayWithHeaders() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(Item.ITEM_ID_CAPTURE, 0, 0, 0, "", 0, 0)
+                .add(5, 0, time(2017, 3, 2, 23), 0, "image/jpeg", 0, 0)
+                .add(4, 0, time(2017, 3, 2, 0), 0, "image/jpeg", 0, 0)
+                .add(3, 0, time(2017, 3, 1, 12), 0, "image/jpeg", 0, 0)
+                .add(2, 0, time(2017, 2, 28, 12), 0, "image/jpeg", 0, 0)
+                .add(1, 0, 0, 0, "image/jpeg", 0, 0)
+                .build();
+        MediaSections sections = MediaSections.compute(index, DateSection.DAY, null);
+
+        assertEquals(6, sections.getCoveredCount());
+        assertEquals(4, sections.getSectionCount());
+        assertEquals(20170302L, sections.getKey(0));
+        assertEquals(20170301L, sections.getKey(1));
+        assertEquals(20170228L, sections.getKey(2));
+        assertEquals(MediaSections.KEY_UNDATED, sections.getKey(3));
+        assertEquals(1, sections.getStart(0));
+        assertEquals(3, sections.getStart(1));
+        assertEquals(5, sections.getStart(3));
+
+        // capture, header, 5, 4, header, 3, header, 2, header, 1
+        assertEquals(10, sections.getListCount(index.getCount()));
+        int[] expected = {0, -1, 1, 2, -1, 3, -1, 4, -1, 5};
+        for (int listPosition = 0; listPosition < expected.length; listPosition++) {
+            int indexPosition = expected[listPosition];
+            assertEquals(indexPosition, sections.indexPositionOf(listPosition));
+            if (indexPosition != -1) {
+                assertEquals(-1, sections.sectionAt(listPosition));
+                assertEquals(listPosition, sections.listPositionOf(indexPosition));
+            }
+        }
+        assertEquals(0, sections.sectionAt(1));
+        assertEquals(3, sections.sectionAt(8));
+        assertEquals(4, sections.headerPositionOf(1));
+    }
+
+    @Test
+    public void keepsMonthsWhateverThePeriod() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(3, 0, time(2017, 3, 2, 12), 0, "image/jpeg", 0, 0)
+                .add(2, 0, time(2017, 3, 1, 12), 0, "image/jpeg", 0, 0)
+                .add(1, 0, time(2016, 12, 31, 12), 0, "image/jpeg", 0, 0)
+                .build();
+        MediaSections sections = MediaSections.compute(index, DateSection.MONTH, null);
+        assertEquals(2, sections.getSectionCount());
+        assertEquals(201703L, sections.getKey(0));
+        assertEquals(201612L, sections.getKey(1));
+        assertEquals(2, sections.getMonthCount());
+        assertEquals(2, sections.getMonthStart(1));
+        assertEquals(201612L, sections.getMonthKey(1));
+        assertEquals(0, sections.monthOf(1));
+        assertEquals(1, sections.monthOf(2));
+
+        MediaSections days = MediaSections.compute(index, DateSection.DAY, null);
+        assertEquals(3, days.getSectionCount());
+        assertEquals(2, days.getMonthCount());
+    }
+
+    @Test
+    public void spanRestartsAfterEachHeader() {
+        MediaIndex.Builder builder = new MediaIndex.Builder();
+        for (int i = 0; i < 5; i++) {
+            builder.add(10 - i, 0, time(2017, 3, 2, 12), 0, "image/jpeg", 0, 0);
+        }
+        builder.add(1, 0, time(2017, 3, 1, 12), 0, "image/jpeg", 0, 0);
+        MediaSections sections = MediaSections.compute(builder.build(), DateSection.DAY, null);
+        // header, 4 + 1 items, header, 1 item
+        int[] expected = {0, 0, 1, 2, 3, 0, 0, 0};
+        for (int listPosition = 0; listPosition < expected.length; listPosition++) {
+            assertEquals(expected[listPosition], sections.spanIndexOf(listPosition, 4));
+        }
+    }
+
+    @Test
+    public void readsOnlyAppendedItems() {
+        MediaIndex.Builder builder = new MediaIndex.Builder()
+                .add(3, 0, time(2017, 3, 2, 12), 0, "image/jpeg", 0, 0);
+        MediaSections first = MediaSections.compute(builder.build(), DateSection.DAY, null);
+        MediaIndex index = builder
+                .add(2, 0, time(2017, 3, 2, 10), 0, "image/jpeg", 0, 0)
+                .add(1, 0, time(2017, 3, 1, 10), 0, "image/jpeg", 0, 0)
+                .build();
+        MediaSections sections = MediaSections.compute(index, DateSection.DAY, first);
+        assertEquals(3, sections.getCoveredCount());
+        assertEquals(2, sections.getSectionCount());
+        assertEquals(2, sections.getStart(1));
+        // the previous sections are left as they were
+        assertEquals(1, first.getSectionCount());
+        assertEquals(1, first.getCoveredCount());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        MediaIndex.Builder builder = new MediaIndex.Builder();
+        for (int day = 40; day > 0; day--) {
+            builder.add(day, 0, time(2017, 1, day, 12), 0, "image/jpeg", 0, 0);
+        }
+        MediaSections sections = MediaSections.compute(builder.build(), DateSection.DAY, null);
+        assertEquals(40, sections.getSectionCount());
+        assertEquals(2, sections.getMonthCount());
+        assertEquals(20170101L, sections.getKey(39));
+        assertEquals(78, sections.headerPositionOf(39));
+    }
+
+    private static long time(int year, int month, int day, int hour) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, 0);
+        return calendar.getTimeInMillis();
+    }
+}
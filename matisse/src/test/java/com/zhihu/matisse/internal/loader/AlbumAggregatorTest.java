@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AlbumAggregatorTest {
+
+    @Test
+    public void groupsByBucketInOrderOfNewestItem() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(Item.ITEM_ID_CAPTURE, 0, 0, 0, "", 0, 0)
+                .add(6, 20, "Screenshots", 60, 60, "image/png", 0, 0)
+                .add(5, 10, "Camera", 50, 50, "image/jpeg", 0, 0)
+                .add(4, 20, "Screenshots", 40, 40, "image/png", 0, 0)
+                .add(3, 10, "Camera", 30, 30, "video/mp4", 0, 0)
+                .add(2, 30, "Download", 20, 20, "image/gif", 0, 0)
+                .build();
+        AlbumAggregator aggregator = new AlbumAggregator();
+        aggregator.addAll(index);
+
+        assertEquals(5, aggregator.getTotalCount());
+        assertEquals(3, aggregator.getBucketCount());
+        assertEquals(20, aggregator.getBucketId(0));
+        assertEquals(10, aggregator.getBucketId(1));
+        assertEquals(30, aggregator.getBucketId(2));
+        assertEquals(1, aggregator.indexOfBucket(10));
+        assertEquals(-1, aggregator.indexOfBucket(40));
+
+        assertEquals("Camera", aggregator.getDisplayName(1));
+        assertEquals(2, aggregator.getCount(1));
+        assertEquals(5, aggregator.getCoverId(1));
+        assertEquals("image/jpeg", aggregator.getCoverMimeType(1));
+        // positions without the capture item
+        assertArrayEquals(new int[]{1, 3}, aggregator.getMembers(1));
+        assertArrayEquals(new int[]{0, 2}, aggregator.getMembers(0));
+        assertArrayEquals(new int[]{4}, aggregator.getMembers(2));
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        MediaIndex.Builder builder = new MediaIndex.Builder();
+        // 40 buckets of 20 items each, interleaved
+        for (int i = 0; i < 800; i++) {
+            builder.add(1000 - i, i % 40, "Album " + (i % 40), 1000 - i, 1000 - i, "image/jpeg", 0, 0);
+        }
+        AlbumAggregator aggregator = new AlbumAggregator();
+        aggregator.addAll(builder.build());
+        assertEquals(40, aggregator.getBucketCount());
+        for (int bucket = 0; bucket < 40; bucket++) {
+            assertEquals(20, aggregator.getCount(bucket));
+            assertEquals(20, aggregator.getMembers(bucket).length);
+            assertEquals(bucket + 20 * 40 - 40, aggregator.getMembers(bucket)[19]);
+        }
+    }
+
+    @Test
+    public void emptyIndex() {
+        AlbumAggregator aggregator = new AlbumAggregator();
+        aggregator.addAll(MediaIndex.empty());
+        assertEquals(0, aggregator.getTotalCount());
+        assertEquals(0, aggregator.getBucketCount());
+    }
+}
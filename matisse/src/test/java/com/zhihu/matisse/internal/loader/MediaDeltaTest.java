@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MediaDeltaTest {
+    private static final String JPEG = "image/jpeg";
+
+    @Test
+    public void unchangedReturnsBase() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        assertSame(base, MediaDelta.reconcile(base, MediaIndex.empty(), new long[]{1, 3, 5}));
+    }
+
+    @Test
+    public void insertsInOrder() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        MediaIndex changes = index(6, 60, 4, 40);
+        MediaIndex result = MediaDelta.reconcile(base, changes, new long[]{1, 3, 4, 5, 6});
+        assertIds(result, 6, 5, 4, 3, 1);
+        assertTrue(result.isDeltaOf(base));
+        assertArrayEquals(new int[0], result.getRemovedPositions());
+        assertArrayEquals(new int[]{0, 2}, result.getInsertedPositions());
+    }
+
+    @Test
+    public void removesMissingIds() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        MediaIndex result = MediaDelta.reconcile(base, MediaIndex.empty(), new long[]{1, 5});
+        assertIds(result, 5, 1);
+        assertTrue(result.isDeltaOf(base));
+        assertArrayEquals(new int[]{1}, result.getRemovedPositions());
+        assertArrayEquals(new int[0], result.getInsertedPositions());
+    }
+
+    @Test
+    public void movesModifiedItem() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        MediaIndex changes = index(3, 60);
+        MediaIndex result = MediaDelta.reconcile(base, changes, new long[]{1, 3, 5});
+        assertIds(result, 3, 5, 1);
+        assertArrayEquals(new int[]{1}, result.getRemovedPositions());
+        assertArrayEquals(new int[]{0}, result.getInsertedPositions());
+    }
+
+    @Test
+    public void ignoresChangeIdenticalToBase() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        MediaIndex changes = index(3, 30);
+        assertSame(base, MediaDelta.reconcile(base, changes, new long[]{1, 3, 5}));
+    }
+
+    @Test
+    public void breaksTiesById() {
+        MediaIndex base = index(5, 30, 3, 30);
+        MediaIndex changes = index(4, 30);
+        assertIds(MediaDelta.reconcile(base, changes, new long[]{3, 4, 5}), 5, 4, 3);
+    }
+
+    @Test
+    public void keepsCaptureInFront() {
+        MediaIndex base = index(Item.ITEM_ID_CAPTURE, 0, 3, 30, 1, 10);
+        MediaIndex changes = index(4, 40);
+        MediaIndex result = MediaDelta.reconcile(base, changes, new long[]{1, 4});
+        assertIds(result, Item.ITEM_ID_CAPTURE, 4, 1);
+        assertTrue(result.isCapture(0));
+        assertArrayEquals(new int[]{1}, result.getRemovedPositions());
+        assertArrayEquals(new int[]{1}, result.getInsertedPositions());
+    }
+
+    @Test
+    public void countMismatchFallsBackToFullQuery() {
+        MediaIndex base = index(5, 50, 3, 30, 1, 10);
+        // 7 is present but was not reported as changed
+        assertNull(MediaDelta.reconcile(base, index(4, 40), new long[]{1, 3, 4, 5, 7}));
+    }
+
+    @Test
+    public void tooManyChangesFallBackToFullQuery() {
+        MediaIndex.Builder changes = new MediaIndex.Builder();
+        long[] present = new long[MediaDelta.MAX_CHANGED_ROWS + 1];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = i + 1;
+            changes.add(present.length - i, 0, present.length - i, 0, JPEG, 0, 0);
+        }
+        assertNull(MediaDelta.reconcile(MediaIndex.empty(), changes.build(), present));
+    }
+
+    /**
+     * @param idsAndDates id, date taken, id, date taken...
+     */
+    private static MediaIndex index(long... idsAndDates) {
+        MediaIndex.Builder builder = new MediaIndex.Builder();
+        for (int i = 0; i < idsAndDates.length; i += 2) {
+            builder.add(idsAndDates[i], 0, idsAndDates[i + 1], idsAndDates[i + 1], JPEG, 0, 0);
+        }
+        return builder.build();
+    }
+
+    private static void assertIds(MediaIndex index, long... ids) {
+        assertEquals(ids.length, index.getCount());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], index.idAt(i));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import android.database.Cursor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MediaIndexStoreTest {
+    private static final String[] COLUMNS = {"_id", "name"};
+
+    @Test
+    public void hugeMediaCountIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeLong(0);
+        out.writeLong(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.close();
+        assertNull(MediaIndexStore.readMedia(ByteBuffer.wrap(bytes.toByteArray())));
+    }
+
+    @Test
+    public void albumsRoundTrip() throws IOException {
+        Cursor cursor = MediaIndexStore.readAlbums(ByteBuffer.wrap(albums(1, 2, "1", "Camera")), COLUMNS);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("Camera", cursor.getString(1));
+    }
+
+    @Test
+    public void hugeAlbumCountIsRejected() throws IOException {
+        assertNull(MediaIndexStore.readAlbums(ByteBuffer.wrap(albums(Integer.MAX_VALUE, 2, "1", "Camera")),
+                COLUMNS));
+    }
+
+    @Test
+    public void negativeAlbumCountIsRejected() throws IOException {
+        assertNull(MediaIndexStore.readAlbums(ByteBuffer.wrap(albums(-1, 2, "1", "Camera")), COLUMNS));
+    }
+
+    @Test
+    public void otherColumnsAreRejected() throws IOException {
+        assertNull(MediaIndexStore.readAlbums(ByteBuffer.wrap(albums(1, 1, "1")), COLUMNS));
+    }
+
+    @Test
+    public void hugeStringLengthIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeInt(2);
+        out.writeInt(Integer.MAX_VALUE);
+        out.writeInt(0);
+        out.close();
+        assertNull(MediaIndexStore.readAlbums(ByteBuffer.wrap(bytes.toByteArray()), COLUMNS));
+    }
+
+    private static byte[] albums(int rows, int columns, String... values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rows);
+        out.writeInt(columns);
+        for (String value : values) {
+            byte[] utf8 = value.getBytes("UTF-8");
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+}
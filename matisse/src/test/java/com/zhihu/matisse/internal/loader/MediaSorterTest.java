@@ -0,0 +1,66 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import com.zhihu.matisse.SortOrder;
+import com.zhihu.matisse.internal.entity.Item;
+import com.zhihu.matisse.internal.entity.MediaIndex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class MediaSorterTest {
+
+    @Test
+    public void sortsBySizeDescending() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(4, 0, 40, 40, "image/jpeg", 100, 0)
+                .add(3, 0, 30, 30, "image/jpeg", 300, 0)
+                .add(2, 0, 20, 20, "image/jpeg", 200, 0)
+                .build();
+        assertArrayEquals(new int[]{1, 2, 0}, MediaSorter.permutationOf(index, SortOrder.SIZE, null));
+    }
+
+    @Test
+    public void equalKeysKeepQueryOrder() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(5, 0, 50, 10, "video/mp4", 0, 1000)
+                .add(4, 0, 40, 20, "video/mp4", 0, 3000)
+                .add(3, 0, 30, 10, "video/mp4", 0, 1000)
+                .add(2, 0, 20, 20, "video/mp4", 0, 3000)
+                .add(1, 0, 10, 10, "video/mp4", 0, 1000)
+                .build();
+        assertArrayEquals(new int[]{1, 3, 0, 2, 4}, MediaSorter.permutationOf(index, SortOrder.DURATION, null));
+        assertArrayEquals(new int[]{1, 3, 0, 2, 4},
+                MediaSorter.permutationOf(index, SortOrder.DATE_MODIFIED, null));
+    }
+
+    @Test
+    public void captureStaysFirst() {
+        MediaIndex index = new MediaIndex.Builder()
+                .add(Item.ITEM_ID_CAPTURE, 0, 0, 0, "", 0, 0)
+                .add(2, 0, 20, 20, "image/jpeg", 100, 0)
+                .add(1, 0, 10, 10, "image/jpeg", 200, 0)
+                .build();
+        assertArrayEquals(new int[]{0, 2, 1}, MediaSorter.permutationOf(index, SortOrder.SIZE, null));
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertArrayEquals(new int[0], MediaSorter.permutationOf(MediaIndex.empty(), SortOrder.SIZE, null));
+    }
+}
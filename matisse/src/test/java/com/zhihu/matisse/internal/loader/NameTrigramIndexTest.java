@@ -0,0 +1,96 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.loader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class NameTrigramIndexTest {
+
+    @Test
+    public void candidatesContainEveryTrigram() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        index.update(names("IMG_2017.jpg", "img_2018.png", "Screenshot.png", null, "VID_2017.mp4"));
+        assertArrayEquals(new int[]{0, 1}, index.candidatesOf("img_201"));
+        assertArrayEquals(new int[]{0, 4}, index.candidatesOf("2017"));
+        assertArrayEquals(new int[]{1, 2}, index.candidatesOf(".PNG"));
+        assertArrayEquals(new int[0], index.candidatesOf("gif"));
+    }
+
+    @Test
+    public void candidatesMayNotContainTheQuery() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        // both trigrams of "abcd", not in order
+        index.update(names("bcd_abc", "abcd"));
+        assertArrayEquals(new int[]{0, 1}, index.candidatesOf("abcd"));
+    }
+
+    @Test
+    public void repeatedTrigramCountsOnce() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        index.update(names("aaaaaa", "aaa"));
+        assertArrayEquals(new int[]{0, 1}, index.candidatesOf("aaaa"));
+    }
+
+    @Test
+    public void foldsCaseLikeRegionMatches() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        // final and medial sigma, and the dotless i, only share their upper case
+        index.update(names("ΟΔΟΣ", "οδος", "οδοσ", "ıstanbul"));
+        assertArrayEquals(new int[]{0, 1, 2}, index.candidatesOf("ΟΔΟΣ"));
+        assertArrayEquals(new int[]{0, 1, 2}, index.candidatesOf("οδος"));
+        assertArrayEquals(new int[]{3}, index.candidatesOf("ISTANBUL"));
+        assertArrayEquals(new int[]{3}, index.candidatesOf("istanbul"));
+    }
+
+    @Test
+    public void updateIndexesAppendedNames() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        MediaNames names = names("summer.jpg");
+        index.update(names);
+        index.update(MediaNames.of(names, new long[]{1}, new String[]{"summer2.jpg"}));
+        assertArrayEquals(new int[]{0, 1}, index.candidatesOf("summer"));
+    }
+
+    @Test
+    public void updateReindexesOtherNames() {
+        NameTrigramIndex index = new NameTrigramIndex();
+        index.update(names("summer.jpg"));
+        index.update(names("winter.jpg", "summer.jpg"));
+        assertArrayEquals(new int[]{1}, index.candidatesOf("summer"));
+        assertArrayEquals(new int[]{0}, index.candidatesOf("winter"));
+    }
+
+    @Test
+    public void growsPastInitialLists() {
+        String[] many = new String[2000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = "n" + i;
+        }
+        NameTrigramIndex index = new NameTrigramIndex();
+        index.update(MediaNames.of(null, new long[many.length], many));
+        assertArrayEquals(new int[]{1999}, index.candidatesOf("n1999"));
+    }
+
+    private static MediaNames names(String... names) {
+        long[] ids = new long[names.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = 100 + i;
+        }
+        return MediaNames.of(null, ids, names);
+    }
+}
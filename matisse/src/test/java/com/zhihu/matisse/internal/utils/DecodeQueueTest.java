@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import com.zhihu.matisse.internal.entity.SelectionSpec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeQueueTest {
+    private final Queue<Runnable> mLane = new ArrayDeque<>();
+    private final List<String> mRun = new ArrayList<>();
+    private Executor mDecodeExecutor;
+
+    @Before
+    public void setUp() {
+        mDecodeExecutor = SelectionSpec.getInstance().decodeExecutor;
+        // runs the workers only when the test says so
+        SelectionSpec.getInstance().decodeExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mLane.add(command);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        SelectionSpec.getInstance().decodeExecutor = mDecodeExecutor;
+    }
+
+    @Test
+    public void runsNewestFirst() {
+        DecodeQueue queue = new DecodeQueue(1, null);
+        queue.execute(new Task("a"));
+        queue.execute(new Task("b"));
+        queue.execute(new Task("c"));
+        assertEquals(1, mLane.size());
+        drain();
+        assertEquals(Arrays.asList("c", "b", "a"), mRun);
+    }
+
+    @Test
+    public void runsByOrderThenNewestFirst() {
+        DecodeQueue queue = new DecodeQueue(1, new Comparator<Runnable>() {
+            @Override
+            public int compare(Runnable a, Runnable b) {
+                // visible tasks first
+                boolean aVisible = ((Task) a).mName.startsWith("v");
+                boolean bVisible = ((Task) b).mName.startsWith("v");
+                return aVisible == bVisible ? 0 : (aVisible ? -1 : 1);
+            }
+        });
+        queue.execute(new Task("v1"));
+        queue.execute(new Task("o1"));
+        queue.execute(new Task("v2"));
+        queue.execute(new Task("o2"));
+        drain();
+        assertEquals(Arrays.asList("v2", "v1", "o2", "o1"), mRun);
+    }
+
+    @Test
+    public void workerTakesTheFirstTaskWhenItStarts() {
+        DecodeQueue queue = new DecodeQueue(1, null);
+        queue.execute(new Task("a"));
+        // queued after the worker was handed to the lane, still run first
+        queue.execute(new Task("b"));
+        mLane.poll().run();
+        assertEquals(Arrays.asList("b"), mRun);
+    }
+
+    @Test
+    public void runsAtMostMaxRunning() {
+        DecodeQueue queue = new DecodeQueue(2, null);
+        for (int i = 0; i < 5; i++) {
+            queue.execute(new Task(String.valueOf(i)));
+        }
+        assertEquals(2, mLane.size());
+        drain();
+        assertEquals(5, mRun.size());
+    }
+
+    @Test
+    public void removedTaskDoesNotRun() {
+        DecodeQueue queue = new DecodeQueue(1, null);
+        Task a = new Task("a");
+        Task b = new Task("b");
+        queue.execute(a);
+        queue.execute(b);
+        assertTrue(queue.remove(a));
+        assertFalse(queue.remove(a));
+        drain();
+        assertEquals(Arrays.asList("b"), mRun);
+        assertFalse(queue.remove(b));
+    }
+
+    @Test
+    public void workerWithoutTaskLetsOthersRun() {
+        DecodeQueue queue = new DecodeQueue(1, null);
+        Task a = new Task("a");
+        queue.execute(a);
+        queue.remove(a);
+        drain();
+        queue.execute(new Task("b"));
+        drain();
+        assertEquals(Arrays.asList("b"), mRun);
+    }
+
+    @Test
+    public void failingTaskLetsOthersRun() {
+        DecodeQueue queue = new DecodeQueue(1, null);
+        queue.execute(new Task("a"));
+        queue.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException();
+            }
+        });
+        try {
+            mLane.poll().run();
+        } catch (IllegalStateException expected) {
+            // the lane sees the failure
+        }
+        drain();
+        assertEquals(Arrays.asList("a"), mRun);
+    }
+
+    private void drain() {
+        Runnable worker;
+        while ((worker = mLane.poll()) != null) {
+            worker.run();
+        }
+    }
+
+    private final class Task implements Runnable {
+        private final String mName;
+
+        Task(String name) {
+            mName = name;
+        }
+
+        @Override
+        public void run() {
+            mRun.add(mName);
+        }
+    }
+}
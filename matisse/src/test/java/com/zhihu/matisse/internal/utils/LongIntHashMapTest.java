@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void missingKeyReturnsMissingValue() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+        assertEquals(-1, map.get(42));
+        assertFalse(map.containsKey(42));
+    }
+
+    @Test
+    public void putReplacesValue() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+        map.put(7, 1);
+        map.put(7, 2);
+        assertEquals(2, map.get(7));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void growsPastExpectedSize() {
+        LongIntHashMap map = new LongIntHashMap(-1, 2);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 1024L, i);
+        }
+        assertEquals(1000, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i * 1024L));
+        }
+        assertEquals(-1, map.get(1));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        LongIntHashMap map = new LongIntHashMap(Integer.MIN_VALUE);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 5000; i++) {
+            // negative and colliding keys too
+            long key = random.nextInt(2000) - 1000L;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = -1000; key < 1000; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? Integer.MIN_VALUE : value, map.get(key));
+            assertEquals(value != null, map.containsKey(key));
+        }
+    }
+
+    @Test
+    public void clearRemovesEverything() {
+        LongIntHashMap map = new LongIntHashMap(-1);
+        map.put(Long.MIN_VALUE, 1);
+        map.put(Long.MAX_VALUE, 2);
+        map.clear();
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(Long.MIN_VALUE));
+        map.put(Long.MAX_VALUE, 3);
+        assertTrue(map.containsKey(Long.MAX_VALUE));
+        assertEquals(3, map.get(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Zhihu Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.zhihu.matisse.internal.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UIUtilsTest {
+
+    @Test
+    public void snapsUpToCanonicalSize() {
+        assertEquals(96, UIUtils.snapThumbnailSize(1));
+        assertEquals(96, UIUtils.snapThumbnailSize(96));
+        assertEquals(128, UIUtils.snapThumbnailSize(97));
+        assertEquals(384, UIUtils.snapThumbnailSize(360));
+        assertEquals(768, UIUtils.snapThumbnailSize(768));
+    }
+
+    @Test
+    public void keepsSizeLargerThanCanonicalOnes() {
+        assertEquals(769, UIUtils.snapThumbnailSize(769));
+        assertEquals(1440, UIUtils.snapThumbnailSize(1440));
+    }
+
+    @Test
+    public void nearbySizesShareOneSize() {
+        // a tile of either orientation of a phone
+        assertEquals(UIUtils.snapThumbnailSize(352), UIUtils.snapThumbnailSize(358));
+    }
+
+    @Test
+    public void neverSnapsDownAndKeepsOrder() {
+        int previous = 0;
+        for (int size = 1; size <= 1000; size++) {
+            int snapped = UIUtils.snapThumbnailSize(size);
+            assertTrue(snapped >= size);
+            assertTrue(snapped >= previous);
+            previous = snapped;
+        }
+    }
+}